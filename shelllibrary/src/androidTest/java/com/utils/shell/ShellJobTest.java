@@ -0,0 +1,41 @@
+package com.utils.shell;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.superuser.Shell;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class ShellJobTest {
+
+    @BeforeClass
+    public static void setUp() {
+        if (Shell.getCachedShell() == null)
+            Shell.setDefaultBuilder(Shell.Builder.create().setFlags(Shell.FLAG_NON_ROOT_SHELL));
+    }
+
+    @Test(timeout = 60000)
+    public void closeStreamFromAnotherThread() throws Exception {
+        Shell.LineStream lines = Shell.sh("echo first;sleep 30;echo late").stream();
+        assertTrue(lines.hasNext());
+        assertEquals("first", lines.next());
+        Thread consumer = new Thread(() -> {
+            while (lines.hasNext())
+                lines.next();
+        });
+        consumer.start();
+        Thread.sleep(500);
+        lines.close();
+        consumer.join(5000);
+        assertFalse("consumer still blocked after close", consumer.isAlive());
+        assertFalse(lines.hasNext());
+        assertTrue(Shell.sh("true").exec().isSuccess());
+    }
+}
@@ -0,0 +1,101 @@
+package com.utils.shell;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Build;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SdkSuppress;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.superuser.Shell;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.SuFile;
+import java.io.SuFileChannel;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Random;
+
+@RunWith(AndroidJUnit4.class)
+@SdkSuppress(minSdkVersion = Build.VERSION_CODES.N)
+public class SuFileChannelTest {
+
+    private static File file;
+    private static byte[] content;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        if (Shell.getCachedShell() == null)
+            Shell.setDefaultBuilder(Shell.Builder.create().setFlags(Shell.FLAG_NON_ROOT_SHELL));
+        file = new File(InstrumentationRegistry.getInstrumentation().getTargetContext()
+                .getCacheDir(), "channel.bin");
+        // Not a multiple of the page size, so the last page is short
+        content = new byte[1024 * 1024 + 1234];
+        new Random(1).nextBytes(content);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        file.delete();
+    }
+
+    private static byte[] readAll(SeekableByteChannel channel, int bufferSize) throws Exception {
+        byte[] b = new byte[(int) channel.size()];
+        ByteBuffer buf = ByteBuffer.allocate(bufferSize);
+        int total = 0, n;
+        while ((n = channel.read(buf)) > 0) {
+            buf.flip();
+            buf.get(b, total, n);
+            total += n;
+            buf.clear();
+        }
+        assertEquals(-1, n);
+        assertEquals(b.length, total);
+        return b;
+    }
+
+    @Test(timeout = 60000)
+    public void readSmallCache() throws Exception {
+        // The shell is forced, so the channel is not a FileChannel of the file
+        try (SeekableByteChannel channel = SuFileChannel.open(new SuFile(file, false), 4)) {
+            assertTrue(channel instanceof SuFileChannel);
+            assertEquals(content.length, channel.size());
+            assertArrayEquals(content, readAll(channel, 4096));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void readSinglePageCache() throws Exception {
+        try (SeekableByteChannel channel = SuFileChannel.open(new SuFile(file, false), 1)) {
+            assertArrayEquals(content, readAll(channel, SuFileChannel.PAGE_SIZE + 1));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void readRandom() throws Exception {
+        Random random = new Random(2);
+        try (SeekableByteChannel channel = SuFileChannel.open(new SuFile(file, false), 4)) {
+            for (int i = 0; i < 50; ++i) {
+                int pos = random.nextInt(content.length);
+                ByteBuffer buf = ByteBuffer.allocate(1 + random.nextInt(3 * SuFileChannel.PAGE_SIZE));
+                channel.position(pos);
+                int n = channel.read(buf);
+                assertEquals(Math.min(buf.capacity(), content.length - pos), n);
+                for (int j = 0; j < n; ++j)
+                    assertEquals(content[pos + j], buf.get(j));
+            }
+        }
+    }
+}
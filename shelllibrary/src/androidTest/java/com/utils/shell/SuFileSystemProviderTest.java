@@ -0,0 +1,139 @@
+package com.utils.shell;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.os.Build;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SdkSuppress;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.superuser.Shell;
+import com.superuser.ShellUtils;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.SuFileSystemProvider;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileOwnerAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Map;
+import java.util.Set;
+
+@RunWith(AndroidJUnit4.class)
+@SdkSuppress(minSdkVersion = Build.VERSION_CODES.O)
+public class SuFileSystemProviderTest {
+
+    private static File root;
+    private static Path file;
+    private static Path link;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        if (Shell.getCachedShell() == null)
+            Shell.setDefaultBuilder(Shell.Builder.create().setFlags(Shell.FLAG_NON_ROOT_SHELL));
+        root = new File(InstrumentationRegistry.getInstrumentation().getTargetContext()
+                .getCacheDir(), "provider");
+        Shell.sh("rm -rf " + ShellUtils.escapedString(root.getPath())).exec();
+        assertTrue(root.mkdirs());
+        File f = new File(root, "file");
+        assertTrue(f.createNewFile());
+        Files.createSymbolicLink(new File(root, "link").toPath(), f.toPath());
+        file = SuFileSystemProvider.get(f.getPath());
+        link = SuFileSystemProvider.get(root.getPath(), "link");
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        Shell.sh("rm -rf " + ShellUtils.escapedString(root.getPath())).exec();
+    }
+
+    private static String ownerOf(File f, LinkOption... options) throws IOException {
+        return Files.getOwner(f.toPath(), options).getName();
+    }
+
+    @Test
+    public void supportedViews() {
+        Set<String> views = file.getFileSystem().supportedFileAttributeViews();
+        assertTrue(views.contains("basic"));
+        assertTrue(views.contains("owner"));
+        assertTrue(views.contains("posix"));
+    }
+
+    @Test
+    public void getOwner() throws IOException {
+        String owner = ownerOf(new File(root, "file"));
+        assertEquals(owner, Files.getOwner(file).getName());
+        assertEquals(owner, Files.getOwner(link).getName());
+        assertEquals(ownerOf(new File(root, "link"), LinkOption.NOFOLLOW_LINKS),
+                Files.getOwner(link, LinkOption.NOFOLLOW_LINKS).getName());
+        FileOwnerAttributeView view = Files.getFileAttributeView(file, FileOwnerAttributeView.class);
+        assertNotNull(view);
+        assertEquals(owner, view.getOwner().getName());
+        Map<String, Object> attrs = Files.readAttributes(file, "owner:*");
+        assertEquals(1, attrs.size());
+        assertEquals(owner, attrs.get("owner").toString());
+    }
+
+    @Test
+    public void setOwner() throws IOException {
+        UserPrincipal owner = Files.getOwner(file);
+        Files.setOwner(file, owner);
+        assertEquals(owner, Files.getOwner(file));
+        Files.getFileAttributeView(link, FileOwnerAttributeView.class, LinkOption.NOFOLLOW_LINKS)
+                .setOwner(Files.getOwner(link, LinkOption.NOFOLLOW_LINKS));
+        // The name is never taken as an option
+        UserPrincipal option = () -> "-h";
+        try {
+            Files.setOwner(file, option);
+            fail();
+        } catch (FileSystemException ignored) {
+        }
+    }
+
+    @Test
+    public void posixPermissions() throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(link, PosixFileAttributeView.class);
+        assertNotNull(view);
+        Set<PosixFilePermission> perms = PosixFilePermissions.fromString("rw-r-----");
+        view.setPermissions(perms);
+        assertEquals(perms, Files.getPosixFilePermissions(file));
+        assertEquals(perms, view.readAttributes().permissions());
+        assertTrue(Files.readAttributes(link, "posix:*", LinkOption.NOFOLLOW_LINKS)
+                .get("isSymbolicLink") == Boolean.TRUE);
+    }
+
+    @Test
+    public void limits() throws IOException {
+        try {
+            Files.newByteChannel(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            fail();
+        } catch (FileSystemException ignored) {
+        }
+        try {
+            Files.getFileStore(file);
+            fail();
+        } catch (FileSystemException ignored) {
+        }
+        try {
+            file.getFileSystem().close();
+            fail();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.utils.shell;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.superuser.Shell;
+import com.superuser.ShellUtils;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.SuFile;
+import java.io.SuFileAttributes;
+import java.io.SuFileInputStream;
+import java.io.SuFileIterator;
+import java.io.SuFileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+@RunWith(AndroidJUnit4.class)
+public class SuFileTest {
+
+    private static File root;
+
+    @BeforeClass
+    public static void setUp() {
+        if (Shell.getCachedShell() == null)
+            Shell.setDefaultBuilder(Shell.Builder.create().setFlags(Shell.FLAG_NON_ROOT_SHELL));
+        root = new File(InstrumentationRegistry.getInstrumentation().getTargetContext()
+                .getCacheDir(), "sufile");
+        Shell.sh("rm -rf " + ShellUtils.escapedString(root.getPath())).exec();
+        assertTrue(root.mkdirs());
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        Shell.sh("rm -rf " + ShellUtils.escapedString(root.getPath())).exec();
+    }
+
+    /**
+     * Create a directory of {@code count} empty files, more than a stream buffers.
+     */
+    private static File newLargeDir(String name, int count) {
+        File dir = new File(root, name);
+        assertTrue(Shell.sh("mkdir " + ShellUtils.escapedString(dir.getPath()) + "&&cd " +
+                ShellUtils.escapedString(dir.getPath()) + "&&i=0;while [ $i -lt " + count +
+                " ];do : >f$i;i=$((i+1));done").exec().isSuccess());
+        return dir;
+    }
+
+    // Names that break line based parsing
+    private static final String[] ODD_NAMES = {"cr\rname", "new\nline", "\rlead", "tail\n",
+            "-rf", "it's \"$x\"", "plain"};
+
+    /**
+     * Create a directory of files with {@link #ODD_NAMES}, and the same in a subdirectory.
+     */
+    private static File newOddDir(String name) throws IOException {
+        File dir = new File(root, name);
+        File sub = new File(dir, "sub\rdir");
+        assertTrue(sub.mkdirs());
+        for (String n : ODD_NAMES) {
+            assertTrue(new File(dir, n).createNewFile());
+            assertTrue(new File(sub, n).createNewFile());
+        }
+        return dir;
+    }
+
+    @Test(timeout = 60000)
+    public void openDirectoryWithQueries() throws Exception {
+        File dir = newLargeDir("open", 2000);
+        int n = 0;
+        try (SuFileIterator it = new SuFile(dir, false).openDirectory(null)) {
+            for (SuFile f : it) {
+                // Every entry queries the shell while the listing is still running
+                assertFalse(f.isDirectory());
+                assertTrue(f.getName().startsWith("f"));
+                ++n;
+            }
+        }
+        assertEquals(2000, n);
+    }
+
+    @Test(timeout = 60000)
+    public void openDirectoryOddNames() throws Exception {
+        File dir = newOddDir("open-odd");
+        Set<String> names = new HashSet<>();
+        try (SuFileIterator it = new SuFile(dir, false).openDirectory(null)) {
+            for (SuFile f : it) {
+                assertEquals(dir.getPath(), f.getParent());
+                names.add(f.getName());
+            }
+        }
+        assertEquals(new HashSet<>(Arrays.asList(dir.list())), names);
+    }
+
+    @Test(timeout = 60000)
+    public void walkOddNames() throws Exception {
+        File dir = newOddDir("walk-odd");
+        Set<String> expected = new HashSet<>();
+        for (File f : dir.listFiles()) {
+            expected.add(f.getPath());
+            if (f.isDirectory()) {
+                for (File c : f.listFiles())
+                    expected.add(c.getPath());
+            }
+        }
+        Set<String> paths = new HashSet<>();
+        try (SuFileIterator it = new SuFile(dir, false).walk()) {
+            for (SuFile f : it) {
+                assertTrue(f.isAbsolute());
+                paths.add(f.getPath());
+            }
+        }
+        assertEquals(expected, paths);
+    }
+
+    @Test(timeout = 60000)
+    public void walkWithQueries() throws Exception {
+        File dir = newLargeDir("walk", 2000);
+        int n = 0;
+        try (SuFileIterator it = new SuFile(dir, false).walk()) {
+            for (SuFile f : it) {
+                assertTrue(f.isFile());
+                ++n;
+            }
+        }
+        assertEquals(2000, n);
+    }
+
+    @Test(timeout = 60000)
+    public void streamsWithShellCalls() throws Exception {
+        // Pipes of the shell are filled, so the commands block on the streams meanwhile
+        byte[] b = new byte[256 * 1024];
+        for (int i = 0; i < b.length; ++i)
+            b[i] = (byte) i;
+        SuFile f = new SuFile(new File(root, "stream"), false);
+        try (SuFileOutputStream out = new SuFileOutputStream(f)) {
+            out.write(b, 0, b.length / 2);
+            out.flush();
+            assertTrue(f.exists());
+            out.write(b, b.length / 2, b.length / 2);
+        }
+        try (SuFileInputStream in = new SuFileInputStream(f)) {
+            assertEquals(1, in.read(new byte[1]));
+            assertEquals(b.length, f.length());
+            assertTrue(new SuFile(root, false).isDirectory());
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void fetchAttributesOddNames() throws Exception {
+        File dir = newOddDir("fetch-odd");
+        String d = ShellUtils.escapedString(dir.getPath());
+        assertTrue(Shell.sh("cd " + d + "&&ln -s 'new\nline' 'link\nname'&&" +
+                "ln -s 'nowhere\nx' 'dangling\r'").exec().isSuccess());
+        List<SuFile> files = new ArrayList<>();
+        for (String n : ODD_NAMES)
+            files.add(new SuFile(new File(dir, n), false));
+        files.add(new SuFile(new File(dir, "link\nname"), false));
+        files.add(new SuFile(new File(dir, "dangling\r"), false));
+        files.add(new SuFile(new File(dir, "gone\nfile"), false));
+        files.add(new SuFile(new File(dir, "sub\rdir"), false));
+        SuFileAttributes[] attrs = SuFile.fetchAttributes(files);
+        assertEquals(files.size(), attrs.length);
+        for (int i = 0; i < ODD_NAMES.length; ++i) {
+            assertNotNull(ODD_NAMES[i], attrs[i]);
+            assertTrue(ODD_NAMES[i], attrs[i].isFile());
+        }
+        SuFileAttributes link = attrs[ODD_NAMES.length];
+        assertTrue(link.exists());
+        assertTrue(link.isSymlink());
+        assertTrue(link.isFile());
+        assertEquals("new\nline", link.getLinkTarget());
+        SuFileAttributes dangling = attrs[ODD_NAMES.length + 1];
+        assertFalse(dangling.exists());
+        assertTrue(dangling.isSymlink());
+        assertEquals("nowhere\nx", dangling.getLinkTarget());
+        assertFalse(attrs[ODD_NAMES.length + 2].exists());
+        assertTrue(attrs[ODD_NAMES.length + 3].isDirectory());
+    }
+
+    @Test(timeout = 60000)
+    public void fetchAttributesLarge() {
+        File dir = newLargeDir("fetch", 2000);
+        List<SuFile> files = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i)
+            files.add(new SuFile(new File(dir, "f" + i), false));
+        files.add(new SuFile(new File(dir, "missing"), false));
+        SuFileAttributes[] attrs = SuFile.fetchAttributes(files);
+        for (int i = 0; i < 2000; ++i)
+            assertTrue(files.get(i).getPath(), attrs[i].isFile());
+        assertFalse(attrs[2000].exists());
+    }
+
+    @Test(timeout = 60000)
+    public void diskUsageCountsEveryLink() throws Exception {
+        File dir = new File(root, "du");
+        String d = ShellUtils.escapedString(dir.getPath());
+        assertTrue(Shell.sh("mkdir -p " + d + "/sub&&cd " + d + "&&" +
+                "dd if=/dev/zero of=a bs=1024 count=100 2>/dev/null&&ln a b&&ln a sub/c&&" +
+                "dd if=/dev/zero of=sub/d bs=1024 count=5 2>/dev/null").exec().isSuccess());
+        String du = ShellUtils.fastCmd("du -skl " + d);
+        long expected = Long.parseLong(du.substring(0, du.indexOf('\t'))) * 1024;
+        AtomicLong self = new AtomicLong(-1), sub = new AtomicLong(-1), total = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(1);
+        new SuFile(dir, false).diskUsage(null, new SuFile.DiskUsageCallback() {
+            @Override
+            public void onUsage(SuFile file, long bytes) {
+                (file.getName().equals("sub") ? sub : self).set(bytes);
+            }
+
+            @Override
+            public void onComplete(long bytes) {
+                total.set(bytes);
+                done.countDown();
+            }
+        });
+        done.await();
+        assertEquals(expected, total.get());
+        assertEquals(expected, self.get() + sub.get());
+    }
+
+    @Test(timeout = 60000)
+    public void listOddNames() throws Exception {
+        File dir = newOddDir("list-odd");
+        assertTrue(Shell.sh("cd " + ShellUtils.escapedString(dir.getPath()) +
+                "&&ln -s 'new\nline' 'link\nname'").exec().isSuccess());
+        Set<String> expected = new HashSet<>(Arrays.asList(dir.list()));
+        SuFile sf = new SuFile(dir, false);
+        assertEquals(expected, new HashSet<>(Arrays.asList(sf.list())));
+        Set<String> names = new HashSet<>();
+        for (File f : sf.listFiles()) {
+            SuFile file = (SuFile) f;
+            names.add(file.getName());
+            assertEquals(new File(dir, file.getName()).isDirectory(), file.isDirectory());
+            if (file.getName().equals("link\nname")) {
+                assertTrue(file.getAttributes().isSymlink());
+                assertEquals("new\nline", file.getAttributes().getLinkTarget());
+            }
+        }
+        assertEquals(expected, names);
+    }
+
+    @Test(timeout = 60000)
+    public void listLarge() {
+        File dir = newLargeDir("list", 5000);
+        SuFile sf = new SuFile(dir, false);
+        assertEquals(5000, sf.list().length);
+        File[] files = sf.listFiles();
+        assertEquals(5000, files.length);
+        for (File f : files)
+            assertTrue(f.getPath(), f.isFile());
+    }
+}
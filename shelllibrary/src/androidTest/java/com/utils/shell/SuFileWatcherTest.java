@@ -0,0 +1,55 @@
+package com.utils.shell;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.superuser.Shell;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.SuFile;
+import java.io.SuFileWatcher;
+
+@RunWith(AndroidJUnit4.class)
+public class SuFileWatcherTest {
+
+    @BeforeClass
+    public static void setUp() {
+        if (Shell.getCachedShell() == null)
+            Shell.setDefaultBuilder(Shell.Builder.create().setFlags(Shell.FLAG_NON_ROOT_SHELL));
+    }
+
+    private static boolean readerRunning() {
+        for (StackTraceElement[] stack : Thread.getAllStackTraces().values()) {
+            for (StackTraceElement e : stack) {
+                if (e.getClassName().equals(SuFileWatcher.class.getName()))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    @Test(timeout = 60000)
+    public void closeFromAnotherThread() throws Exception {
+        File dir = new File(InstrumentationRegistry.getInstrumentation().getTargetContext()
+                .getCacheDir(), "watch");
+        assertTrue(dir.isDirectory() || dir.mkdirs());
+        SuFileWatcher watcher = new SuFile(dir, false).watch(null, (event, file) -> {
+        });
+        // Let the reader block waiting for events
+        Thread.sleep(1000);
+        Thread closer = new Thread(watcher::close);
+        closer.start();
+        closer.join(10000);
+        assertFalse(closer.isAlive());
+        for (int i = 0; i < 50 && readerRunning(); ++i)
+            Thread.sleep(100);
+        assertFalse("watcher reader still running after close", readerRunning());
+    }
+}
@@ -17,10 +17,12 @@
 package com.superuser;
 
 import android.content.Context;
+import android.os.Build;
 
 import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
 
 import com.superuser.internal.BuilderImpl;
 import com.superuser.internal.MainShell;
@@ -30,7 +32,9 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -110,12 +114,47 @@ public abstract class Shell implements Closeable {
      * </ul>
      * Check the descriptions of each method above for more details.
      * <p>
+     * STDERR is merged into STDOUT by the shell itself for the duration of each affected job,
+     * so outputs are stored in the exact order they are produced.
+     * <p>
      * Constant value {@value}.
      */
     public static final int FLAG_REDIRECT_STDERR = (1 << 3);
 
     /* Preserve (1 << 4) due to historical reasons */
 
+    /**
+     * If set, jobs will be pipelined.
+     * <p>
+     * By default, a shell runs one {@link Job} at a time: the commands of a job are written
+     * to STDIN, then the shell waits for all of its outputs before serving the next job.
+     * With this flag, jobs are written to STDIN back-to-back as soon as they are executed or
+     * submitted, each followed by its own end marker. Dedicated reader threads route outputs
+     * and return codes back to each job, so bursts of small jobs no longer pay a full round
+     * trip each.
+     * <p>
+     * Note: the shell will still run jobs one after another. Commands that read from STDIN
+     * will consume the commands of subsequent jobs, and low-level {@link Task}s executed with
+     * {@link #execTask(Task)} will wait for all pipelined jobs to finish.
+     * <p>
+     * Constant value {@value}.
+     */
+    public static final int FLAG_PIPELINE = (1 << 5);
+
+    /**
+     * If set, small jobs executed or submitted concurrently will be batched.
+     * <p>
+     * Jobs that only consist of commands (no {@link InputStream}s) are queued instead of being
+     * written to STDIN one by one. Whenever the shell is ready for more jobs, all queued jobs
+     * are written as a single script, each followed by its own end marker, so a burst of
+     * {@link ShellUtils#fastCmd(String...)} calls from several threads only pays one round trip.
+     * Each job still gets its own {@link Result}. A job executed alone is written immediately
+     * and does not wait for other jobs to join its batch.
+     * <p>
+     * Constant value {@value}.
+     */
+    public static final int FLAG_BATCH_JOBS = (1 << 6);
+
     /**
      * The {@link ExecutorService} that manages all worker threads used in {@code libsu}.
      * <p>
@@ -389,6 +428,7 @@ public abstract class Shell implements Closeable {
 
         protected int flags = 0;
         protected long timeout = 20;
+        protected int poolSize = 1;
         protected Class<? extends Initializer>[] initClasses = null;
 
         /**
@@ -421,8 +461,9 @@ public abstract class Shell implements Closeable {
          *
          * @param flags the desired flags.
          *              Value is either 0 or bitwise-or'd value of
-         *              {@link #FLAG_NON_ROOT_SHELL}, {@link #FLAG_MOUNT_MASTER}, or
-         *              {@link #FLAG_REDIRECT_STDERR}
+         *              {@link #FLAG_NON_ROOT_SHELL}, {@link #FLAG_MOUNT_MASTER},
+         *              {@link #FLAG_REDIRECT_STDERR}, {@link #FLAG_PIPELINE},
+         *              or {@link #FLAG_BATCH_JOBS}
          * @return this Builder object for chaining of calls.
          */
         @NonNull
@@ -447,6 +488,30 @@ public abstract class Shell implements Closeable {
             return this;
         }
 
+        /**
+         * Set the maximum number of shells that jobs created with {@code Shell.su(...)} and
+         * {@code Shell.sh(...)} are dispatched to.
+         * <p>
+         * The main shell is always part of the pool. As soon as the main shell is constructed,
+         * the remaining shells are constructed with this builder in background threads and kept
+         * alive for subsequent jobs. Each job is dispatched to the least loaded shell, so
+         * independent jobs can run in parallel.
+         * <p>
+         * The shell returned by {@link #getShell()} is not affected by this option; use it
+         * directly when a sequence of jobs has to run on the same shell.
+         * <p>
+         * This option only takes effect on the builder set with {@link #setDefaultBuilder(Builder)}.
+         *
+         * @param size the maximum number of shells in the pool.
+         *             The default size is 1, which means only the main shell is used.
+         * @return this Builder object for chaining of calls.
+         */
+        @NonNull
+        public final Builder setPoolSize(int size) {
+            this.poolSize = Math.max(size, 1);
+            return this;
+        }
+
         /**
          * Combine all of the options that have been set and build a new {@code Shell} instance
          * with the default methods.
@@ -567,6 +632,49 @@ public abstract class Shell implements Closeable {
         @NonNull
         public abstract Job to(@Nullable List<String> stdout, @Nullable List<String> stderr);
 
+        /**
+         * Copy the output of STDOUT as raw bytes to an {@link OutputStream}.
+         * <p>
+         * Unlike {@link #to(List)}, STDOUT is not decoded into lines, so binary outputs
+         * (e.g. {@code cat} of an image or a {@code tar} stream) are passed through unmodified.
+         * The bytes are copied directly from the shell in large chunks while the job is running.
+         * STDERR is never written to the stream; it is only stored if a list was set with
+         * {@link #to(List, List)} before calling this method. {@link Result#getOut()} will
+         * always return an empty list.
+         * <p>
+         * The stream is flushed but not closed when the job is done. If writing to the stream
+         * fails, the job will return {@link Result#JOB_NOT_EXECUTED}.
+         *
+         * @param stdout the stream to receive STDOUT. Pass {@code null} to omit STDOUT.
+         * @return this Job object for chaining of calls.
+         */
+        @NonNull
+        public abstract Job toBytes(@Nullable OutputStream stdout);
+
+        /**
+         * Submit the job to run in the background and stream the output of STDOUT line by line.
+         * <p>
+         * Outputs are read from the shell only as fast as the returned {@link LineStream}
+         * is consumed: once its internal buffer is full, the shell stops reading STDOUT and the
+         * commands will block on writing outputs. This allows processing huge outputs in
+         * constant memory. Output of STDOUT will not be stored to any {@link List}; STDERR is
+         * only stored if a list is set with {@link #to(List, List)}, or streamed together
+         * with STDOUT if the flag {@link #FLAG_REDIRECT_STDERR} is set.
+         * <p>
+         * The commands run in a subshell, so changes to the shell environment (e.g. {@code cd}
+         * or variable assignments) will not persist after the job. Closing the stream before
+         * reaching the end kills the commands.
+         * <p>
+         * The shell is occupied until the stream is consumed or closed. Jobs created with
+         * {@link #sh(String...)} or {@link #su(String...)} therefore run on a spare shell that
+         * no other job is dispatched to, so commands issued while consuming the stream never
+         * wait for it; spare shells are built with the default {@link Builder} when needed.
+         *
+         * @return a stream of lines; always close the stream when done.
+         */
+        @NonNull
+        public abstract LineStream stream();
+
         /**
          * Add a new operation running commands.
          *
@@ -592,6 +700,38 @@ public abstract class Shell implements Closeable {
         @NonNull
         public abstract Job add(@NonNull InputStream in);
 
+        /**
+         * Kill the commands of the job if they run longer than the given time.
+         * <p>
+         * The timer starts when the commands start running, not when the job is queued.
+         * Once the time is up, the commands and all processes they started are killed and
+         * the job finishes with the outputs produced so far and return code {@code 137}
+         * ({@code SIGKILL}); the shell itself stays alive and serves the next job.
+         * <p>
+         * The commands run in a subshell, so changes to the shell environment (e.g. {@code cd}
+         * or variable assignments) will not persist after the job.
+         *
+         * @param timeout the maximum time to run, or 0 to disable the timeout.
+         * @param unit    the time unit of {@code timeout}.
+         * @return this Job object for chaining of calls.
+         */
+        @NonNull
+        public abstract Job timeout(long timeout, @NonNull TimeUnit unit);
+
+        /**
+         * Cancel the job.
+         * <p>
+         * If the job has not been sent to the shell yet, it will not run and returns
+         * {@link Result#JOB_NOT_EXECUTED}. If the job is running and a timeout is set with
+         * {@link #timeout(long, TimeUnit)}, its commands are killed the same way as when the
+         * time is up. Otherwise, a running job cannot be stopped and will finish normally.
+         * <p>
+         * This method can be called from any thread, e.g. after the job is submitted with
+         * {@link #submit(Executor, ResultCallback)}. Interrupting a thread blocked in
+         * {@link #exec()} cancels the job as well.
+         */
+        public abstract void cancel();
+
         /**
          * Execute the job immediately and returns the result.
          *
@@ -627,6 +767,81 @@ public abstract class Shell implements Closeable {
          * @param cb       the callback to receive the result of the job.
          */
         public abstract void submit(@Nullable Executor executor, @Nullable ResultCallback cb);
+
+        /**
+         * Submit the job to an internal queue to run in the background.
+         * The result will be returned with a {@link CompletableFuture} completed on
+         * {@link #EXECUTOR}, same as {@link #submitAsync(Executor)} with {@link #EXECUTOR}.
+         * <p>
+         * Unlike {@link #submit(ResultCallback)}, the result is not delivered on the main thread.
+         * Dependent stages added with the non-async methods of {@link CompletableFuture} run on
+         * {@link #EXECUTOR} too, never on the threads reading the outputs of the shell.
+         * <p>
+         * Cancelling the future also cancels the job with {@link #cancel()}.
+         *
+         * @return a future completed with the result of the job.
+         */
+        @RequiresApi(Build.VERSION_CODES.N)
+        @NonNull
+        public CompletableFuture<Result> submitAsync() {
+            return submitAsync(EXECUTOR);
+        }
+
+        /**
+         * Submit the job to an internal queue to run in the background.
+         * The result will be returned with a {@link CompletableFuture} completed by the
+         * provided executor, which also runs the dependent stages added with the non-async
+         * methods of {@link CompletableFuture}.
+         * <p>
+         * Cancelling the future also cancels the job with {@link #cancel()}.
+         *
+         * @param executor the executor used to complete the future.
+         * @return a future completed with the result of the job.
+         */
+        @RequiresApi(Build.VERSION_CODES.N)
+        @NonNull
+        public CompletableFuture<Result> submitAsync(@NonNull Executor executor) {
+            CompletableFuture<Result> future = new CompletableFuture<>();
+            future.whenComplete((res, t) -> {
+                if (future.isCancelled())
+                    cancel();
+            });
+            submit(executor, future::complete);
+            return future;
+        }
+    }
+
+    /**
+     * A stream of the output lines of a {@link Job}, returned by {@link Job#stream()}.
+     * <p>
+     * The stream can only be iterated once. {@link #hasNext()} blocks until the next line
+     * is available or the job is done.
+     */
+    public abstract static class LineStream implements Iterator<String>, Iterable<String>, Closeable {
+
+        /**
+         * @return this stream, so it can be used in a for-each loop.
+         */
+        @NonNull
+        @Override
+        public Iterator<String> iterator() {
+            return this;
+        }
+
+        /**
+         * Stop the stream. If the job is still running, its commands will be killed and all
+         * remaining outputs are discarded.
+         */
+        @Override
+        public abstract void close();
+
+        /**
+         * Wait for the job to finish and get its return code.
+         *
+         * @return the return code of the job, or {@link Result#JOB_NOT_EXECUTED} if the job
+         * failed to execute.
+         */
+        public abstract int getCode();
     }
 
     /**
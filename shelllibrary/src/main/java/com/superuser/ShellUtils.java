@@ -16,15 +16,18 @@
 
 package com.superuser;
 
+import android.os.Build;
 import android.os.Looper;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Some handy utility methods that are used in {@code libsu}.
@@ -101,6 +104,72 @@ public final class ShellUtils {
         return shell.newJob().add(cmds).to(null).exec().isSuccess();
     }
 
+    /**
+     * Run commands in the background and get a single line output.
+     * The commands run the same way as {@link Shell#sh(String...)}.
+     *
+     * @param cmds the commands.
+     * @return a future completed with the last line of the output of the command, empty string
+     * if no output is available.
+     * @see Shell.Job#submitAsync()
+     */
+    @RequiresApi(Build.VERSION_CODES.N)
+    @NonNull
+    public static CompletableFuture<String> fastCmdAsync(String... cmds) {
+        return lastLine(Shell.sh(cmds).to(new ArrayList<>(), null).submitAsync());
+    }
+
+    /**
+     * Run commands in the background and get a single line output.
+     *
+     * @param shell a shell instance.
+     * @param cmds  the commands.
+     * @return a future completed with the last line of the output of the command, empty string
+     * if no output is available.
+     * @see Shell.Job#submitAsync()
+     */
+    @RequiresApi(Build.VERSION_CODES.N)
+    @NonNull
+    public static CompletableFuture<String> fastCmdAsync(Shell shell, String... cmds) {
+        return lastLine(shell.newJob().add(cmds).to(new ArrayList<>(), null).submitAsync());
+    }
+
+    @RequiresApi(Build.VERSION_CODES.N)
+    private static CompletableFuture<String> lastLine(CompletableFuture<Shell.Result> future) {
+        return future.thenApply(res -> {
+            List<String> out = res.getOut();
+            return isValidOutput(out) ? out.get(out.size() - 1) : "";
+        });
+    }
+
+    /**
+     * Run commands in the background and return whether exits with 0 (success).
+     * The commands run the same way as {@link Shell#sh(String...)}.
+     *
+     * @param cmds the commands.
+     * @return a future completed with {@code true} if the commands succeed.
+     * @see Shell.Job#submitAsync()
+     */
+    @RequiresApi(Build.VERSION_CODES.N)
+    @NonNull
+    public static CompletableFuture<Boolean> fastCmdResultAsync(String... cmds) {
+        return Shell.sh(cmds).to(null).submitAsync().thenApply(Shell.Result::isSuccess);
+    }
+
+    /**
+     * Run commands in the background and return whether exits with 0 (success).
+     *
+     * @param shell a shell instance.
+     * @param cmds  the commands.
+     * @return a future completed with {@code true} if the commands succeed.
+     * @see Shell.Job#submitAsync()
+     */
+    @RequiresApi(Build.VERSION_CODES.N)
+    @NonNull
+    public static CompletableFuture<Boolean> fastCmdResultAsync(Shell shell, String... cmds) {
+        return shell.newJob().add(cmds).to(null).submitAsync().thenApply(Shell.Result::isSuccess);
+    }
+
     /**
      * Check if current thread is main thread.
      *
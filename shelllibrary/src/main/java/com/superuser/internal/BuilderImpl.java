@@ -17,8 +17,10 @@
 package com.superuser.internal;
 
 
+import static com.superuser.Shell.FLAG_BATCH_JOBS;
 import static com.superuser.Shell.FLAG_MOUNT_MASTER;
 import static com.superuser.Shell.FLAG_NON_ROOT_SHELL;
+import static com.superuser.Shell.FLAG_PIPELINE;
 import static com.superuser.Shell.FLAG_REDIRECT_STDERR;
 import static com.superuser.Shell.ROOT_SHELL;
 
@@ -41,6 +43,10 @@ public class BuilderImpl extends Shell.Builder {
         return (this.flags & flags) == flags;
     }
 
+    int getPoolSize() {
+        return poolSize;
+    }
+
     @NonNull
     @Override
     public ShellImpl build() {
@@ -78,7 +84,8 @@ public class BuilderImpl extends Shell.Builder {
     public ShellImpl build(String... commands) {
         ShellImpl shell;
         try {
-            shell = new ShellImpl(timeout, hasFlags(FLAG_REDIRECT_STDERR), commands);
+            shell = new ShellImpl(timeout, hasFlags(FLAG_REDIRECT_STDERR),
+                    hasFlags(FLAG_PIPELINE), hasFlags(FLAG_BATCH_JOBS), commands);
         } catch (IOException e) {
             Utils.ex(e);
             throw new NoShellException("Unable to create a shell!", e);
@@ -24,10 +24,12 @@ import com.superuser.Shell;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 
 class JobImpl extends Shell.Job implements Closeable {
@@ -35,7 +37,16 @@ class JobImpl extends Shell.Job implements Closeable {
     protected List<String> out, err;
     private final List<ShellInputSource> sources = new ArrayList<>();
     protected ShellImpl shell;
+    // Set if the job is already counted in the load of the shell by MainShell.dispatch()
+    protected boolean dispatched = false;
     private boolean stderrSet = false;
+    private OutputStream byteOut;
+
+    // Cancellation of killable jobs
+    protected boolean killable = false;
+    private long timeoutNanos = 0;
+    private volatile boolean cancelled = false;
+    private volatile TaskImpl task;
 
     JobImpl() {
     }
@@ -44,13 +55,19 @@ class JobImpl extends Shell.Job implements Closeable {
         shell = s;
     }
 
-    private ResultImpl exec0() {
-        boolean redirect = !stderrSet && shell.redirect;
+    private boolean isRedirect() {
+        return !stderrSet && shell.redirect;
+    }
+
+    private ResultImpl newResult(boolean redirect) {
         if (redirect)
             err = out;
 
         ResultImpl result = new ResultImpl();
-        if (out != null && out == err && !Utils.isSynchronized(out)) {
+        if (redirect) {
+            // STDERR is merged into STDOUT by the shell, only STDOUT is read
+            result.out = out;
+        } else if (out != null && out == err && !Utils.isSynchronized(out)) {
             // Synchronize the list internally only if both lists are the same and are not
             // already synchronized by the user
             List<String> list = Collections.synchronizedList(out);
@@ -60,32 +77,162 @@ class JobImpl extends Shell.Job implements Closeable {
             result.out = out;
             result.err = err;
         }
+        return result;
+    }
+
+    private void finish(ResultImpl result, boolean redirect) {
+        close();
+        result.out = out;
+        result.err = redirect ? null : err;
+    }
+
+    private static ResultImpl onError(IOException e) {
+        if (e instanceof ShellTerminatedException) {
+            return ResultImpl.SHELL_ERR;
+        } else {
+            Utils.err(e);
+            return ResultImpl.INSTANCE;
+        }
+    }
+
+    private TaskImpl newTask(ResultImpl result, boolean redirect) {
+        TaskImpl t = new TaskImpl(sources, result, killable, redirect);
+        t.byteOut = byteOut;
+        t.timeoutNanos = timeoutNanos;
+        task = t;
+        if (cancelled)
+            t.cancel();
+        return t;
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        TaskImpl t = task;
+        if (t != null)
+            t.cancel();
+    }
+
+    private ResultImpl exec0() {
+        if (cancelled) {
+            close();
+            return ResultImpl.INSTANCE;
+        }
+        boolean redirect = isRedirect();
+        ResultImpl result = newResult(redirect);
         try {
-            shell.execTask(new TaskImpl(sources, result));
+            shell.execJob(newTask(result, redirect));
         } catch (IOException e) {
-            if (e instanceof ShellTerminatedException) {
-                return ResultImpl.SHELL_ERR;
-            } else {
-                Utils.err(e);
-                return ResultImpl.INSTANCE;
-            }
+            return onError(e);
         } finally {
-            close();
-            result.out = out;
-            result.err = redirect ? null : err;
+            finish(result, redirect);
         }
         return result;
     }
 
+    /**
+     * Queue the job on a pipelined or batching shell and return immediately.
+     * The callback is invoked by the gobbler thread once the job is done.
+     */
+    private void pipe0(Executor executor, Shell.ResultCallback cb) {
+        ShellImpl s = shell;
+        if (cancelled) {
+            s.pending.decrementAndGet();
+            close();
+            ResultImpl.INSTANCE.callback(executor, cb);
+            return;
+        }
+        boolean redirect = isRedirect();
+        ResultImpl result = newResult(redirect);
+        TaskImpl task = newTask(result, redirect);
+        task.onComplete = () -> {
+            s.pending.decrementAndGet();
+            finish(result, redirect);
+            IOException e = task.getError();
+            (e == null ? result : onError(e)).callback(executor, cb);
+        };
+        try {
+            s.submitTask(task);
+        } catch (IOException e) {
+            // The task was never queued
+            s.pending.decrementAndGet();
+            finish(result, redirect);
+            onError(e).callback(executor, cb);
+        }
+    }
+
+    private void acquire(ShellImpl s) {
+        if (dispatched)
+            dispatched = false;
+        else
+            s.pending.incrementAndGet();
+    }
+
     @NonNull
     @Override
     public Shell.Result exec() {
-        return exec0();
+        acquire(shell);
+        try {
+            return exec0();
+        } finally {
+            shell.pending.decrementAndGet();
+        }
     }
 
     @Override
     public void submit(@Nullable Executor executor, @Nullable Shell.ResultCallback cb) {
-        shell.executor.execute(() -> exec0().callback(executor, cb));
+        ShellImpl s = shell;
+        acquire(s);
+        try {
+            if (s.pipeline || (s.batch && TaskImpl.isSmall(sources))) {
+                // The serial executor only keeps the writes in submission order
+                s.executor.execute(() -> pipe0(executor, cb));
+                return;
+            }
+            s.executor.execute(() -> {
+                ResultImpl result;
+                try {
+                    result = exec0();
+                } finally {
+                    s.pending.decrementAndGet();
+                }
+                result.callback(executor, cb);
+            });
+        } catch (RuntimeException e) {
+            s.pending.decrementAndGet();
+            throw e;
+        }
+    }
+
+    @NonNull
+    @Override
+    public Shell.LineStream stream() {
+        LineStreamImpl stream = new LineStreamImpl(this);
+        out = stream.sink;
+        byteOut = null;
+        if (!stderrSet)
+            err = null;
+        return start(stream);
+    }
+
+    /**
+     * Like {@link #stream()}, but STDOUT is split into NUL terminated records instead of
+     * lines, see {@link LineStreamImpl#records}. STDERR is never merged into the records.
+     */
+    Shell.LineStream streamRecords() {
+        LineStreamImpl stream = new LineStreamImpl(this);
+        out = null;
+        byteOut = stream.records;
+        if (!stderrSet)
+            err = null;
+        stderrSet = true;
+        return start(stream);
+    }
+
+    protected Shell.LineStream start(LineStreamImpl stream) {
+        killable = true;
+        submit(null, stream::finish);
+        return stream;
     }
 
     @NonNull
@@ -93,6 +240,7 @@ class JobImpl extends Shell.Job implements Closeable {
     public Shell.Job to(List<String> output) {
         out = output;
         err = null;
+        byteOut = null;
         stderrSet = false;
         return this;
     }
@@ -102,10 +250,32 @@ class JobImpl extends Shell.Job implements Closeable {
     public Shell.Job to(List<String> stdout, List<String> stderr) {
         out = stdout;
         err = stderr;
+        byteOut = null;
         stderrSet = true;
         return this;
     }
 
+    @NonNull
+    @Override
+    public Shell.Job toBytes(@Nullable OutputStream stdout) {
+        out = null;
+        byteOut = stdout;
+        if (!stderrSet)
+            err = null;
+        // STDERR is never merged into binary outputs
+        stderrSet = true;
+        return this;
+    }
+
+    @NonNull
+    @Override
+    public Shell.Job timeout(long timeout, @NonNull TimeUnit unit) {
+        timeoutNanos = Math.max(unit.toNanos(timeout), 0);
+        if (timeoutNanos > 0)
+            killable = true;
+        return this;
+    }
+
     @NonNull
     @Override
     public Shell.Job add(@NonNull InputStream in) {
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2021 John "topjohnwu" Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.superuser.internal;
+
+import static com.superuser.internal.Utils.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Scan lines and end markers directly on the raw bytes of a shell output stream.
+ * <p>
+ * Each shell owns one scanner per output stream, so the buffer is reused across tasks.
+ * Lines are only decoded into {@code String}s when they are actually delivered. Binary
+ * outputs can also be copied through the same buffer with {@link #copy(OutputStream, byte[])}.
+ * Similar to {@link java.io.BufferedReader#readLine()}, a line is considered to be
+ * terminated by any one of a line feed ('\n'), a carriage return ('\r'), or a carriage
+ * return followed immediately by a line feed.
+ */
+class LineScanner {
+
+    private static final String TAG = "SHELLOUT";
+    private static final int BUF_SIZE = 8192;
+
+    private final InputStream in;
+    private byte[] buf = new byte[BUF_SIZE];
+    private int pos = 0;
+    private int lim = 0;
+    private boolean skipLF = false;
+
+    // Boundaries of the last scanned line
+    private int start;
+    private int end;
+
+    LineScanner(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Discard all buffered data.
+     */
+    void reset() {
+        pos = lim = 0;
+        skipLF = false;
+    }
+
+    /**
+     * Locate the next line in the buffer, reading more data if necessary.
+     *
+     * @return {@code false} if EOF is reached and there is no more line.
+     */
+    private boolean nextLine() throws IOException {
+        int i = pos;
+        for (; ; ) {
+            for (; i < lim; ++i) {
+                byte b = buf[i];
+                if (skipLF) {
+                    skipLF = false;
+                    if (b == '\n') {
+                        ++pos;
+                        continue;
+                    }
+                }
+                if (b == '\n' || b == '\r') {
+                    start = pos;
+                    end = i;
+                    pos = i + 1;
+                    skipLF = b == '\r';
+                    return true;
+                }
+            }
+            // No line terminator in buffer, make room and read more
+            if (pos > 0) {
+                System.arraycopy(buf, pos, buf, 0, lim - pos);
+                lim -= pos;
+                i -= pos;
+                pos = 0;
+            } else if (lim == buf.length) {
+                byte[] b = new byte[buf.length * 2];
+                System.arraycopy(buf, 0, b, 0, lim);
+                buf = b;
+            }
+            int read = in.read(buf, lim, buf.length - lim);
+            if (read < 0) {
+                if (pos == lim)
+                    return false;
+                // Last line without line terminator
+                start = pos;
+                end = lim;
+                pos = lim;
+                return true;
+            }
+            lim += read;
+        }
+    }
+
+    private boolean endsWith(byte[] marker) {
+        int len = marker.length;
+        if (end - start < len)
+            return false;
+        for (int i = 0, off = end - len; i < len; ++i) {
+            if (buf[off + i] != marker[i])
+                return false;
+        }
+        return true;
+    }
+
+    private void deliver(List<String> list, int len) {
+        String line = new String(buf, start, len, UTF_8);
+        list.add(line);
+        Utils.log(TAG, line);
+    }
+
+    /**
+     * Deliver lines to the list until the line ending with the marker is reached.
+     * Outputs before the marker on the same line is delivered as a separate line.
+     *
+     * @param list   the list to store outputs, or {@code null} to discard them.
+     * @param marker the end marker.
+     * @return {@code false} if EOF is reached before the marker.
+     */
+    boolean scan(List<String> list, byte[] marker) throws IOException {
+        while (nextLine()) {
+            int len = end - start;
+            if (endsWith(marker)) {
+                if (list != null && len > marker.length)
+                    deliver(list, len - marker.length);
+                return true;
+            }
+            if (list != null)
+                deliver(list, len);
+        }
+        return false;
+    }
+
+    private static IOException write(OutputStream out, byte[] b, int off, int len, IOException error) {
+        if (out == null || error != null || len == 0)
+            return error;
+        try {
+            out.write(b, off, len);
+        } catch (IOException e) {
+            return e;
+        }
+        return null;
+    }
+
+    /**
+     * Copy raw bytes to the output stream until the marker is reached, without any
+     * line processing. The rest of the line containing the marker is discarded.
+     * <p>
+     * If writing to the output stream fails, the remaining bytes are still consumed
+     * until the marker so the framing of the shell stays intact.
+     *
+     * @param out    the destination, or {@code null} to discard all bytes.
+     * @param marker the end marker.
+     * @return the error when writing to {@code out}, or {@code null} if successful.
+     * @throws IOException errors from reading the shell.
+     */
+    IOException copy(OutputStream out, byte[] marker) throws IOException {
+        IOException error = null;
+        int len = marker.length;
+        byte first = marker[0];
+        if (skipLF && pos < lim && buf[pos] == '\n')
+            ++pos;
+        skipLF = false;
+        for (; ; ) {
+            for (int i = pos, last = lim - len; i <= last; ++i) {
+                if (buf[i] != first)
+                    continue;
+                start = i;
+                end = i + len;
+                if (endsWith(marker)) {
+                    error = write(out, buf, pos, i - pos, error);
+                    pos = end;
+                    nextLine();
+                    if (error == null && out != null) {
+                        try {
+                            out.flush();
+                        } catch (IOException e) {
+                            error = e;
+                        }
+                    }
+                    return error;
+                }
+            }
+            // Everything except the last few bytes cannot be part of a marker
+            int keep = Math.max(pos, lim - len + 1);
+            error = write(out, buf, pos, keep - pos, error);
+            System.arraycopy(buf, keep, buf, 0, lim - keep);
+            lim -= keep;
+            pos = 0;
+            int read = in.read(buf, lim, buf.length - lim);
+            if (read < 0) {
+                pos = lim;
+                return write(out, buf, 0, lim, error);
+            }
+            lim += read;
+        }
+    }
+
+    /**
+     * Read a single line.
+     *
+     * @return the decoded line, or {@code null} if EOF is reached.
+     */
+    String readLine() throws IOException {
+        return nextLine() ? new String(buf, start, end - start, UTF_8) : null;
+    }
+}
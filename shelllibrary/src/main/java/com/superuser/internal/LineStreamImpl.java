@@ -0,0 +1,180 @@
+/*
+ * Copyright 2021 John "topjohnwu" Wu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.superuser.internal;
+
+import static com.superuser.internal.Utils.UTF_8;
+
+import androidx.annotation.NonNull;
+
+import com.superuser.Shell;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+class LineStreamImpl extends Shell.LineStream {
+
+    private static final int CAPACITY = 512;
+    // Queued after the last line; compared by reference
+    @SuppressWarnings("StringOperationCanBeSimplified")
+    private static final String EOF = new String();
+
+    private final ArrayBlockingQueue<String> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final JobImpl job;
+    private volatile boolean closed = false;
+    private volatile Shell.Result result = ResultImpl.INSTANCE;
+    private String next;
+    private boolean eof = false;
+
+    /**
+     * The output destination of the job. Adding a line blocks the gobbler
+     * until there is space in the queue, which stops reading from the shell.
+     */
+    final List<String> sink = new AbstractList<String>() {
+        @Override
+        public String get(int i) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public void add(int i, String line) {
+            put(line);
+        }
+    };
+
+    /**
+     * The binary output destination of the job for NUL terminated records, e.g. the output of
+     * {@code find -print0}. Each record is delivered like a line, so it may contain any other
+     * character; an unterminated record at the end is dropped.
+     */
+    final OutputStream records = new OutputStream() {
+        private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+        @Override
+        public void write(int b) {
+            if (b == 0)
+                deliver();
+            else
+                record.write(b);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) {
+            int end = off + len;
+            for (int i = off; i < end; ++i) {
+                if (b[i] == 0) {
+                    record.write(b, off, i - off);
+                    deliver();
+                    off = i + 1;
+                }
+            }
+            record.write(b, off, end - off);
+        }
+
+        private void deliver() {
+            put(new String(record.toByteArray(), UTF_8));
+            record.reset();
+        }
+    };
+
+    LineStreamImpl(JobImpl job) {
+        this.job = job;
+    }
+
+    // Lines are dropped once the stream is closed, close() queues EOF itself
+    private void put(String line) {
+        while (!closed) {
+            try {
+                queue.put(line);
+                return;
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    void finish(@NonNull Shell.Result res) {
+        result = res;
+        done.countDown();
+        put(EOF);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null)
+            return true;
+        if (eof || closed)
+            return false;
+        String line;
+        try {
+            line = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            return false;
+        }
+        if (line == EOF || closed) {
+            eof = true;
+            return false;
+        }
+        next = line;
+        return true;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        String line = next;
+        next = null;
+        return line;
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        // Unblock the gobbler, all further outputs will be dropped
+        queue.clear();
+        // Wake up a consumer blocked in hasNext()
+        queue.offer(EOF);
+        if (done.getCount() != 0)
+            job.cancel();
+    }
+
+    @Override
+    public int getCode() {
+        for (; ; ) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException ignored) {
+            }
+        }
+        return result.getCode();
+    }
+}
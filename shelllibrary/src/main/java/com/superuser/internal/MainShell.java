@@ -21,12 +21,16 @@ import static com.superuser.Shell.EXECUTOR;
 
 import androidx.annotation.RestrictTo;
 
-import com.superuser.NoShellException;
-import com.superuser.Shell;
 import com.superuser.NoShellException;
 import com.superuser.Shell;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Executor;
 
 
@@ -37,6 +41,16 @@ public final class MainShell {
     private static ShellImpl mainShell;
     private static BuilderImpl defaultBuilder;
 
+    // Additional warm shells that pending jobs can be dispatched to
+    private static final List<ShellImpl> workers = new ArrayList<>();
+    private static int spawning;
+    private static boolean poolFull;
+
+    // Idle shells kept for jobs that hold their shell, see borrow()
+    private static final List<ShellImpl> spares = new ArrayList<>();
+    // Shells currently lent out that were built with the current default builder
+    private static final Set<ShellImpl> lent = new HashSet<>();
+
     private MainShell() {
     }
 
@@ -44,8 +58,12 @@ public final class MainShell {
         ShellImpl shell = getCached();
         if (shell == null) {
             isInitMain = true;
-            shell = getBuilder().build();
-            isInitMain = false;
+            try {
+                shell = getBuilder().build();
+            } finally {
+                isInitMain = false;
+            }
+            fillPool();
         }
         return shell;
     }
@@ -64,8 +82,12 @@ public final class MainShell {
                 try {
                     synchronized (MainShell.class) {
                         isInitMain = true;
-                        s = getBuilder().build();
-                        isInitMain = false;
+                        try {
+                            s = getBuilder().build();
+                        } finally {
+                            isInitMain = false;
+                        }
+                        fillPool();
                     }
                 } catch (NoShellException e) {
                     Utils.ex(e);
@@ -92,6 +114,184 @@ public final class MainShell {
 
     public static synchronized void setBuilder(Shell.Builder builder) {
         defaultBuilder = (BuilderImpl) builder;
+        // Workers created with the previous builder should no longer be used
+        for (ShellImpl shell : workers) {
+            EXECUTOR.execute(() -> {
+                try {
+                    shell.waitAndClose();
+                } catch (IOException ignored) {
+                }
+            });
+        }
+        workers.clear();
+        poolFull = false;
+        for (ShellImpl shell : spares)
+            EXECUTOR.execute(shell::close);
+        spares.clear();
+        lent.clear();
+    }
+
+    /**
+     * Get the least loaded shell out of the main shell and all warm workers, and count
+     * the job in the load of that shell right away, so concurrent callers are spread
+     * over the pool. The caller has to decrement {@link ShellImpl#pending} once the job
+     * is done. Missing workers are spawned in the background until the pool is full.
+     */
+    static synchronized ShellImpl dispatch() {
+        ShellImpl shell = get();
+        int load = shell.pending.get();
+        for (Iterator<ShellImpl> it = workers.iterator(); it.hasNext(); ) {
+            ShellImpl worker = it.next();
+            if (worker.getStatus() < 0) {
+                it.remove();
+                continue;
+            }
+            int l = worker.pending.get();
+            if (l < load) {
+                shell = worker;
+                load = l;
+            }
+        }
+        shell.pending.incrementAndGet();
+        fillPool();
+        return shell;
+    }
+
+    /**
+     * Spawn workers in the background until the pool reaches the size of the default builder.
+     */
+    private static void fillPool() {
+        if (poolFull || mainShell == null)
+            return;
+        BuilderImpl builder = getBuilder();
+        int status = mainShell.getStatus();
+        while (1 + workers.size() + spawning < builder.getPoolSize())
+            spawnWorker(builder, status);
+    }
+
+    private static void spawnWorker(BuilderImpl builder, int status) {
+        ++spawning;
+        EXECUTOR.execute(() -> {
+            ShellImpl shell;
+            try {
+                shell = builder.build();
+            } catch (NoShellException e) {
+                Utils.ex(e);
+                shell = null;
+            }
+            synchronized (MainShell.class) {
+                --spawning;
+                if (shell != null && shell.getStatus() >= status && builder == defaultBuilder) {
+                    workers.add(shell);
+                    return;
+                }
+                // Do not keep retrying (e.g. root requests being denied)
+                if (builder == defaultBuilder)
+                    poolFull = true;
+            }
+            if (shell != null)
+                shell.close();
+        });
+    }
+
+    /**
+     * Build a new shell with the default builder that is never used by the static APIs,
+     * e.g. to run commands that last as long as the application needs them.
+     */
+    public static ShellImpl newShell() {
+        BuilderImpl builder;
+        synchronized (MainShell.class) {
+            builder = getBuilder();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Get a shell for a job that keeps its shell busy until the application is done with it,
+     * e.g. streams. The shell is neither the main shell nor a worker of the pool, so no other
+     * job ever waits for it; it is an idle spare, or a new shell built with the default builder.
+     * Give it back with {@link #release(ShellImpl)} once the job is done.
+     */
+    static ShellImpl borrow() {
+        BuilderImpl builder;
+        synchronized (MainShell.class) {
+            while (!spares.isEmpty()) {
+                ShellImpl shell = spares.remove(spares.size() - 1);
+                if (shell.getStatus() >= 0) {
+                    lent.add(shell);
+                    return shell;
+                }
+            }
+            builder = getBuilder();
+        }
+        ShellImpl shell = builder.build();
+        synchronized (MainShell.class) {
+            if (builder == defaultBuilder)
+                lent.add(shell);
+        }
+        return shell;
+    }
+
+    /**
+     * Give back a shell of {@link #borrow()}. Up to as many idle spares as the size of the pool
+     * are kept, other shells are closed.
+     */
+    static void release(ShellImpl shell) {
+        synchronized (MainShell.class) {
+            if (lent.remove(shell) && shell.getStatus() >= 0 &&
+                    spares.size() < getBuilder().getPoolSize()) {
+                spares.add(shell);
+                return;
+            }
+        }
+        EXECUTOR.execute(shell::close);
+    }
+
+    /**
+     * Run a short command on a shell that is idle right now, e.g. to kill the commands of
+     * a busy shell. The shell is an idle spare or a worker without pending jobs, other than
+     * {@code busy} and with at least its status; no new shell is ever built.
+     *
+     * @return false if no shell is idle.
+     */
+    static boolean execIdle(ShellImpl busy, String cmd) {
+        ShellImpl shell = null;
+        boolean spare = false;
+        synchronized (MainShell.class) {
+            int status = busy.getStatus();
+            for (Iterator<ShellImpl> it = spares.iterator(); it.hasNext(); ) {
+                ShellImpl s = it.next();
+                if (s.getStatus() < 0) {
+                    it.remove();
+                } else if (s.getStatus() >= status) {
+                    it.remove();
+                    lent.add(s);
+                    shell = s;
+                    spare = true;
+                    break;
+                }
+            }
+            if (shell == null) {
+                List<ShellImpl> shells = new ArrayList<>(workers);
+                if (mainShell != null)
+                    shells.add(mainShell);
+                for (ShellImpl s : shells) {
+                    if (s != busy && s.getStatus() >= status && s.pending.get() == 0) {
+                        shell = s;
+                        break;
+                    }
+                }
+            }
+        }
+        if (shell == null)
+            return false;
+        ShellImpl s = shell;
+        boolean release = spare;
+        s.newJob().add(cmd).to(null).submit(null, r -> {
+            if (release)
+                release(s);
+        });
+        return true;
     }
 
     private static BuilderImpl getBuilder() {
@@ -107,4 +307,22 @@ public final class MainShell {
     public static Shell.Job newJob(boolean su, String... cmds) {
         return new PendingJob(su).add(cmds);
     }
+
+    /**
+     * Create a job like {@link #newJob(boolean, String...)} that runs on a shell of
+     * {@link #borrow()}, for commands that keep their shell busy until the application
+     * is done with them.
+     */
+    public static Shell.Job newLongJob(boolean su, String... cmds) {
+        return new PendingJob(su, true).add(cmds);
+    }
+
+    /**
+     * Stream the STDOUT of a job created by this library as NUL terminated records, e.g. the
+     * output of {@code find -print0}, like {@link Shell.Job#stream()} streams lines.
+     * An unterminated record at the end is dropped.
+     */
+    public static Shell.LineStream streamRecords(Shell.Job job) {
+        return ((JobImpl) job).streamRecords();
+    }
 }
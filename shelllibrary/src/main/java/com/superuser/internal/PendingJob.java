@@ -16,6 +16,8 @@
 
 package com.superuser.internal;
 
+import static com.superuser.Shell.EXECUTOR;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
@@ -30,29 +32,60 @@ class PendingJob extends JobImpl {
 
     private final boolean isSU;
     private boolean retry;
+    // Run on a shell of MainShell.borrow() instead of the pool
+    private boolean lend;
 
     PendingJob(boolean su) {
+        this(su, false);
+    }
+
+    PendingJob(boolean su, boolean lend) {
         isSU = su;
+        this.lend = lend;
         retry = true;
         to(NOPList.getInstance());
     }
 
+    private ShellImpl take() {
+        if (lend)
+            return MainShell.borrow();
+        ShellImpl s = MainShell.dispatch();
+        dispatched = true;
+        return s;
+    }
+
+    private void giveBack(ShellImpl s) {
+        if (lend)
+            MainShell.release(s);
+        else if (dispatched)
+            s.pending.decrementAndGet();
+        dispatched = false;
+    }
+
     @NonNull
     @Override
     public Shell.Result exec() {
+        ShellImpl s;
         try {
-            shell = MainShell.get();
+            s = shell = take();
         } catch (NoShellException e) {
             close();
             return ResultImpl.INSTANCE;
         }
-        if (isSU && !shell.isRoot()) {
+        if (isSU && !s.isRoot()) {
+            giveBack(s);
             close();
             return ResultImpl.INSTANCE;
         }
         if (out instanceof NOPList)
             out = new ArrayList<>();
-        Shell.Result res = super.exec();
+        Shell.Result res;
+        try {
+            res = super.exec();
+        } finally {
+            if (lend)
+                MainShell.release(s);
+        }
         if (retry && res == ResultImpl.SHELL_ERR) {
             // The cached shell is terminated, try to re-run this task
             retry = false;
@@ -63,24 +96,50 @@ class PendingJob extends JobImpl {
 
     @Override
     public void submit(@Nullable Executor executor, @Nullable Shell.ResultCallback cb) {
-        MainShell.get(null, s -> {
-            if (isSU && !s.isRoot()) {
-                close();
-                ResultImpl.INSTANCE.callback(executor, cb);
-                return;
+        if (!lend && MainShell.getCached() != null) {
+            dispatch(executor, cb);
+        } else {
+            // Build the shell in a worker thread
+            EXECUTOR.execute(() -> dispatch(executor, cb));
+        }
+    }
+
+    @Override
+    protected Shell.LineStream start(LineStreamImpl stream) {
+        // The stream keeps its shell busy until it is consumed
+        lend = true;
+        return super.start(stream);
+    }
+
+    private void dispatch(@Nullable Executor executor, @Nullable Shell.ResultCallback cb) {
+        ShellImpl s;
+        try {
+            s = shell = take();
+        } catch (NoShellException e) {
+            // Still report the failure, callers may be waiting for the callback
+            Utils.ex(e);
+            close();
+            ResultImpl.INSTANCE.callback(executor, cb);
+            return;
+        }
+        if (isSU && !s.isRoot()) {
+            giveBack(s);
+            close();
+            ResultImpl.INSTANCE.callback(executor, cb);
+            return;
+        }
+        if (out instanceof NOPList)
+            out = (cb == null) ? null : new ArrayList<>();
+        super.submit(executor, res -> {
+            if (lend)
+                MainShell.release(s);
+            if (retry && res == ResultImpl.SHELL_ERR) {
+                // The cached shell is terminated, try to re-schedule this task
+                retry = false;
+                submit(executor, cb);
+            } else if (cb != null) {
+                cb.onResult(res);
             }
-            if (out instanceof NOPList)
-                out = (cb == null) ? null : new ArrayList<>();
-            shell = (ShellImpl) s;
-            super.submit(executor, res -> {
-                if (retry && res == ResultImpl.SHELL_ERR) {
-                    // The cached shell is terminated, try to re-schedule this task
-                    retry = false;
-                    submit(executor, cb);
-                } else if (cb != null) {
-                    cb.onResult(res);
-                }
-            });
         });
     }
 }
@@ -16,6 +16,7 @@
 
 package com.superuser.internal;
 
+import static com.superuser.Shell.EXECUTOR;
 import static com.superuser.internal.Utils.UTF_8;
 
 import android.text.TextUtils;
@@ -26,37 +27,57 @@ import com.superuser.Shell;
 import com.superuser.ShellUtils;
 
 import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
 import java.io.FilterInputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-
-class ShellTerminatedException extends IOException {
-
-    ShellTerminatedException() {
-        super("Shell terminated unexpectedly");
-    }
-}
+import java.util.concurrent.atomic.AtomicInteger;
 
 class ShellImpl extends Shell {
     private static final String TAG = "SHELLIMPL";
+    // Kill a process after all of its descendants. Each process is stopped first,
+    // so it can neither spawn new children nor move on to the next command.
+    // Children are found by the parent PID in /proc/PID/stat, after the command name
+    // in parentheses, which may contain spaces and parentheses itself.
+    private static final String KILL_CMD = "k(){ kill -STOP $1;" +
+            "for s in /proc/[0-9]*/stat;do read -r l <$s||continue;l=${l##*) };l=${l#* };" +
+            "[ \"${l%% *}\" = $1 ]&&s=${s#/proc/}&&k ${s%/stat};done;kill -9 $1;};k ";
+    private static final int KILL_TIMEOUT_SEC = 10;
 
     private int status;
 
     final ExecutorService executor;
     final boolean redirect;
+    final boolean pipeline;
+    final boolean batch;
+    // Number of jobs running or waiting to run on this shell
+    final AtomicInteger pending = new AtomicInteger();
     private final Process process;
+    private final String[] cmd;
     private final NoCloseOutputStream STDIN;
     private final NoCloseInputStream STDOUT;
     private final NoCloseInputStream STDERR;
+    private final LineScanner outScanner;
+    private final LineScanner errScanner;
+
+    private final StreamGobbler outGobbler;
+    private final StreamGobbler errGobbler;
+    // Merged jobs never use the STDERR gobbler, so it is only started when needed
+    private boolean errStarted = false;
+    private final Object inflightLock = new Object();
+    private int inflight = 0;
+
+    // Small tasks waiting to be written together, guarded by itself
+    private final ArrayList<TaskImpl> batchQueue = new ArrayList<>();
+    private boolean flushing = false;
 
     private static class NoCloseInputStream extends FilterInputStream {
 
@@ -94,16 +115,24 @@ class ShellImpl extends Shell {
         }
     }
 
-    ShellImpl(long timeout, boolean redirect, String... cmd) throws IOException {
+    ShellImpl(long timeout, boolean redirect, boolean pipeline, boolean batch,
+              String... cmd) throws IOException {
         status = UNKNOWN;
         this.redirect = redirect;
+        this.pipeline = pipeline;
+        this.batch = batch;
+        this.cmd = cmd;
 
         Utils.log(TAG, "exec " + TextUtils.join(" ", cmd));
         process = Runtime.getRuntime().exec(cmd);
         STDIN = new NoCloseOutputStream(process.getOutputStream());
         STDOUT = new NoCloseInputStream(process.getInputStream());
         STDERR = new NoCloseInputStream(process.getErrorStream());
+        outScanner = new LineScanner(STDOUT);
+        errScanner = new LineScanner(STDERR);
         executor = new SerialExecutorService();
+        outGobbler = new StreamGobbler(this, outScanner, true);
+        errGobbler = new StreamGobbler(this, errScanner, false);
 
         if (cmd.length >= 2 && TextUtils.equals(cmd[1], "--mount-master"))
             status = ROOT_MOUNT_MASTER;
@@ -130,6 +159,12 @@ class ShellImpl extends Shell {
             release();
             throw e;
         }
+
+        EXECUTOR.execute(outGobbler);
+        if (!redirect) {
+            errStarted = true;
+            EXECUTOR.execute(errGobbler);
+        }
     }
 
     private Void shellCheck() throws IOException {
@@ -137,31 +172,30 @@ class ShellImpl extends Shell {
         ShellUtils.cleanInputStream(STDOUT);
         ShellUtils.cleanInputStream(STDERR);
 
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(STDOUT))) {
+        STDIN.write(("echo SHELL_TEST\n").getBytes(UTF_8));
+        STDIN.flush();
+        String s = outScanner.readLine();
+        if (TextUtils.isEmpty(s) || !s.contains("SHELL_TEST"))
+            throw new IOException("Created process is not a shell");
+        int status = NON_ROOT_SHELL;
 
-            STDIN.write(("echo SHELL_TEST\n").getBytes(UTF_8));
-            STDIN.flush();
-            String s = br.readLine();
-            if (TextUtils.isEmpty(s) || !s.contains("SHELL_TEST"))
-                throw new IOException("Created process is not a shell");
-            int status = NON_ROOT_SHELL;
-
-            STDIN.write(("id\n").getBytes(UTF_8));
-            STDIN.flush();
-            s = br.readLine();
-            if (!TextUtils.isEmpty(s) && s.contains("uid=0"))
-                status = ROOT_SHELL;
+        STDIN.write(("id\n").getBytes(UTF_8));
+        STDIN.flush();
+        s = outScanner.readLine();
+        if (!TextUtils.isEmpty(s) && s.contains("uid=0"))
+            status = ROOT_SHELL;
 
-            if (status == ROOT_SHELL && this.status == ROOT_MOUNT_MASTER)
-                status = ROOT_MOUNT_MASTER;
+        if (status == ROOT_SHELL && this.status == ROOT_MOUNT_MASTER)
+            status = ROOT_MOUNT_MASTER;
 
-            this.status = status;
-        }
+        this.status = status;
         return null;
     }
 
     private void release() {
         status = UNKNOWN;
+        outGobbler.close();
+        errGobbler.close();
         try {
             STDIN.close0();
         } catch (IOException ignored) {
@@ -181,8 +215,11 @@ class ShellImpl extends Shell {
     public boolean waitAndClose(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
         if (status < 0)
             return true;
+        long nanos = unit.toNanos(timeout);
+        long start = System.nanoTime();
         executor.shutdown();
-        if (executor.awaitTermination(timeout, unit)) {
+        if (executor.awaitTermination(timeout, unit) && awaitPipeline(
+                nanos == Long.MAX_VALUE ? nanos : nanos - (System.nanoTime() - start))) {
             release();
             return true;
         } else {
@@ -220,13 +257,21 @@ class ShellImpl extends Shell {
         }
     }
 
-    @Override
-    public synchronized void execTask(@NonNull Task task) throws IOException {
+    private void prepareTask() throws IOException {
         if (status < 0)
             throw new ShellTerminatedException();
 
+        // Tasks require exclusive access to all streams
+        try {
+            awaitPipeline(Long.MAX_VALUE);
+        } catch (InterruptedException e) {
+            throw (InterruptedIOException) new InterruptedIOException().initCause(e);
+        }
+
         ShellUtils.cleanInputStream(STDOUT);
         ShellUtils.cleanInputStream(STDERR);
+        outScanner.reset();
+        errScanner.reset();
         try {
             STDIN.write('\n');
             STDIN.flush();
@@ -235,10 +280,233 @@ class ShellImpl extends Shell {
             release();
             throw new ShellTerminatedException();
         }
+    }
 
+    @Override
+    public synchronized void execTask(@NonNull Task task) throws IOException {
+        prepareTask();
         task.run(STDIN, STDOUT, STDERR);
     }
 
+    private synchronized void runTask(TaskImpl task) throws IOException {
+        prepareTask();
+        pipeTask(task);
+        task.await();
+    }
+
+    void execJob(TaskImpl task) throws IOException {
+        if (batch && task.isSmall()) {
+            batchTask(task, false);
+            task.await();
+        } else if (pipeline) {
+            pipeTask(task);
+            task.await();
+        } else {
+            runTask(task);
+        }
+    }
+
+    /**
+     * Write the task to STDIN without waiting for its outputs. The task will be
+     * completed by the gobblers.
+     *
+     * @throws ShellTerminatedException the shell is terminated and the task is not queued.
+     */
+    synchronized void pipeTask(TaskImpl task) throws IOException {
+        if (status < 0)
+            throw new ShellTerminatedException();
+
+        task.shell = this;
+        synchronized (inflightLock) {
+            ++inflight;
+        }
+        offer(task);
+        try {
+            task.serve(STDIN);
+        } catch (IOException e) {
+            // The stream framing can no longer be trusted
+            task.fail(new ShellTerminatedException());
+            release();
+        }
+    }
+
+    /**
+     * Queue the task without waiting for its outputs. Unlike {@link #pipeTask(TaskImpl)},
+     * this works on both pipelined and non-pipelined shells.
+     *
+     * @throws ShellTerminatedException the shell is terminated and the task is not queued.
+     */
+    void submitTask(TaskImpl task) throws IOException {
+        if (batch && task.isSmall())
+            batchTask(task, true);
+        else
+            pipeTask(task);
+    }
+
+    /**
+     * Add the task to the batch queue. If no batch is being written, the caller becomes the
+     * writer: synchronous callers write the current batch themselves, while asynchronous
+     * callers hand it over to a worker thread. Tasks queued while a batch is being written or
+     * running are written together in the next batch.
+     * <p>
+     * Failures are reported through the task and never thrown.
+     */
+    private void batchTask(TaskImpl task, boolean async) {
+        synchronized (batchQueue) {
+            batchQueue.add(task);
+            if (flushing)
+                return;
+            flushing = true;
+        }
+        if (async) {
+            EXECUTOR.execute(this::flushBatches);
+            return;
+        }
+        // Write a single batch, and leave the rest to a worker thread so the caller
+        // is not kept busy by tasks from other threads
+        if (flushBatch()) {
+            synchronized (batchQueue) {
+                if (batchQueue.isEmpty()) {
+                    flushing = false;
+                    return;
+                }
+            }
+            EXECUTOR.execute(this::flushBatches);
+        }
+    }
+
+    private void flushBatches() {
+        while (flushBatch());
+    }
+
+    /**
+     * Write all queued tasks as a single script.
+     *
+     * @return {@code false} if the queue is empty and the writer stopped.
+     */
+    private boolean flushBatch() {
+        TaskImpl[] tasks;
+        synchronized (batchQueue) {
+            if (batchQueue.isEmpty()) {
+                flushing = false;
+                return false;
+            }
+            tasks = batchQueue.toArray(new TaskImpl[0]);
+            batchQueue.clear();
+        }
+        synchronized (this) {
+            try {
+                // Non-pipelined shells wait here for the previous batch to finish,
+                // which is also when the next batch is gathered
+                if (pipeline) {
+                    if (status < 0)
+                        throw new ShellTerminatedException();
+                } else {
+                    prepareTask();
+                }
+            } catch (IOException e) {
+                for (TaskImpl t : tasks) {
+                    t.fail(e);
+                    t.complete();
+                }
+                return true;
+            }
+            synchronized (inflightLock) {
+                inflight += tasks.length;
+            }
+            for (TaskImpl t : tasks) {
+                t.shell = this;
+                offer(t);
+            }
+            try {
+                for (TaskImpl t : tasks)
+                    t.write(STDIN);
+                STDIN.flush();
+            } catch (IOException e) {
+                // The stream framing can no longer be trusted
+                for (TaskImpl t : tasks)
+                    t.fail(new ShellTerminatedException());
+                release();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Queue the task to the gobblers. Merged tasks are only queued to the STDOUT gobbler.
+     */
+    private synchronized void offer(TaskImpl task) {
+        outGobbler.offer(task);
+        if (task.redirect)
+            return;
+        if (!errStarted) {
+            errStarted = true;
+            EXECUTOR.execute(errGobbler);
+        }
+        errGobbler.offer(task);
+    }
+
+    void streamDone(TaskImpl task) {
+        if (task.streamDone()) {
+            synchronized (inflightLock) {
+                if (--inflight == 0)
+                    inflightLock.notifyAll();
+            }
+            task.complete();
+        }
+    }
+
+    /**
+     * Kill a process and all of its descendants. As this shell is busy waiting for
+     * the process, the command runs on an idle shell of the pool with at least the status
+     * of this shell, see {@link MainShell#execIdle(ShellImpl, String)}. Only if there is none,
+     * it runs in a new process created the same way as this shell, which is destroyed if it
+     * does not exit within {@value #KILL_TIMEOUT_SEC} seconds.
+     */
+    void kill(int pid) {
+        String kill = KILL_CMD + pid + " 2>/dev/null";
+        if (MainShell.execIdle(this, kill))
+            return;
+        EXECUTOR.execute(() -> {
+            Process p = null;
+            Future<?> timeout = null;
+            try {
+                p = Runtime.getRuntime().exec(cmd);
+                timeout = TaskImpl.getTimer().schedule(p::destroy,
+                        KILL_TIMEOUT_SEC, TimeUnit.SECONDS);
+                OutputStream in = p.getOutputStream();
+                in.write((kill + ";exit\n").getBytes(UTF_8));
+                in.close();
+                p.waitFor();
+            } catch (IOException | InterruptedException e) {
+                Utils.err(TAG, e);
+            } finally {
+                if (timeout != null)
+                    timeout.cancel(false);
+                if (p != null)
+                    p.destroy();
+            }
+        });
+    }
+
+    private boolean awaitPipeline(long nanos) throws InterruptedException {
+        synchronized (inflightLock) {
+            while (inflight > 0) {
+                if (nanos == Long.MAX_VALUE) {
+                    inflightLock.wait();
+                    continue;
+                }
+                long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+                if (millis <= 0)
+                    return false;
+                long start = System.nanoTime();
+                inflightLock.wait(millis);
+                nanos -= System.nanoTime() - start;
+            }
+        }
+        return true;
+    }
+
     @NonNull
     @Override
     public Job newJob() {
@@ -28,6 +28,13 @@ interface ShellInputSource extends Closeable {
 
     void serve(OutputStream out) throws IOException;
 
+    /**
+     * Whether the source only consists of commands, which are cheap to write.
+     */
+    default boolean isCommand() {
+        return false;
+    }
+
     @Override
     default void close() {
     }
@@ -66,6 +73,11 @@ class CommandSource implements ShellInputSource {
         this.cmd = cmd;
     }
 
+    @Override
+    public boolean isCommand() {
+        return true;
+    }
+
     @Override
     public void serve(OutputStream out) throws IOException {
         for (String command : cmd) {
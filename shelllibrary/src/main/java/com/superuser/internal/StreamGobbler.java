@@ -16,85 +16,102 @@
 
 package com.superuser.internal;
 
-import static com.superuser.internal.TaskImpl.END_UUID;
-import static com.superuser.internal.TaskImpl.UUID_LEN;
-import static com.superuser.internal.Utils.UTF_8;
-
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.List;
-import java.util.concurrent.Callable;
-
-abstract class StreamGobbler<T> implements Callable<T> {
-
-    private static final String TAG = "SHELLOUT";
-
-    protected final InputStream in;
-    protected final List<String> list;
-
-    StreamGobbler(InputStream in, List<String> list) {
-        this.in = in;
-        this.list = list;
+import java.util.Collections;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A long-lived reader loop consuming STDOUT or STDERR of a shell.
+ * <p>
+ * Tasks are queued in the same order as they are written to STDIN. The gobbler routes
+ * the output of each task to its result until the task's own end marker is reached,
+ * then hands the task back to the shell and moves on to the next one. The stream is
+ * only read while a task is queued, so the shell can still serve raw {@code Task}s
+ * when no job is running. Data read ahead by the scanner can only belong to tasks
+ * that are already queued.
+ */
+class StreamGobbler implements Runnable {
+
+    private static final int NO_RESULT_CODE = 1;
+    // Queued to wake up and stop the reader loop
+    private static final TaskImpl CLOSE = new TaskImpl(Collections.emptyList(), null, false, false);
+
+    private final ShellImpl shell;
+    private final LineScanner scanner;
+    private final boolean isStdout;
+    private final LinkedBlockingQueue<TaskImpl> tasks = new LinkedBlockingQueue<>();
+    private volatile boolean closed = false;
+
+    StreamGobbler(ShellImpl shell, LineScanner scanner, boolean isStdout) {
+        this.shell = shell;
+        this.scanner = scanner;
+        this.isStdout = isStdout;
     }
 
-    private boolean outputAndCheck(String line) {
-        if (line == null)
-            return false;
-
-        int len = line.length();
-        boolean end = line.startsWith(END_UUID, len - UUID_LEN);
-        if (end) {
-            if (len == UUID_LEN)
-                return false;
-            line = line.substring(0, len - UUID_LEN);
-        }
-        if (list != null) {
-            list.add(line);
-            Utils.log(TAG, line);
-        }
-        return !end;
+    void offer(TaskImpl task) {
+        tasks.offer(task);
+        if (closed)
+            drain();
     }
 
-    protected String process(boolean res) throws IOException {
-        BufferedReader br = new BufferedReader(new InputStreamReader(in, UTF_8));
-        String line;
-        do {
-            line = br.readLine();
-        } while (outputAndCheck(line));
-        return res ? br.readLine() : null;
+    void close() {
+        closed = true;
+        tasks.offer(CLOSE);
     }
 
-    static class OUT extends StreamGobbler<Integer> {
-
-        private static final int NO_RESULT_CODE = 1;
-
-        OUT(InputStream in, List<String> list) {
-            super(in, list);
+    private void drain() {
+        TaskImpl task;
+        while ((task = tasks.poll()) != null) {
+            if (task != CLOSE) {
+                task.fail(new ShellTerminatedException());
+                shell.streamDone(task);
+            }
         }
+    }
 
-        @Override
-        public Integer call() throws Exception {
-            String code = process(true);
+    private TaskImpl take() {
+        for (; ; ) {
             try {
-                return code == null ? NO_RESULT_CODE : Integer.parseInt(code);
-            } catch (NumberFormatException e) {
-                return NO_RESULT_CODE;
+                return tasks.take();
+            } catch (InterruptedException ignored) {
             }
         }
     }
 
-    static class ERR extends StreamGobbler<Void> {
-
-        ERR(InputStream in, List<String> list) {
-            super(in, list);
+    private static int parseInt(String s, int def) {
+        try {
+            return s == null ? def : Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            return def;
         }
+    }
 
-        @Override
-        public Void call() throws Exception {
-            process(false);
-            return null;
+    @Override
+    public void run() {
+        TaskImpl task;
+        while ((task = take()) != CLOSE) {
+            try {
+                if (isStdout) {
+                    if (task.killable)
+                        task.setPid(parseInt(scanner.readLine(), 0));
+                    IOException error = null;
+                    if (task.byteOut != null)
+                        error = scanner.copy(task.byteOut, task.marker);
+                    else
+                        scanner.scan(task.res.out, task.marker);
+                    // Returns null if EOF is already reached
+                    String code = scanner.readLine();
+                    task.res.code = parseInt(code, NO_RESULT_CODE);
+                    if (error != null)
+                        task.fail(error);
+                } else {
+                    scanner.scan(task.res.err, task.marker);
+                }
+            } catch (IOException e) {
+                task.fail(closed ? new ShellTerminatedException() : e);
+            }
+            shell.streamDone(task);
         }
+        drain();
     }
 }
@@ -16,62 +16,205 @@
 
 package com.superuser.internal;
 
-import static com.superuser.Shell.EXECUTOR;
 import static com.superuser.internal.Utils.UTF_8;
 
-import androidx.annotation.NonNull;
-
-import com.superuser.Shell;
-
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-class TaskImpl implements Shell.Task {
+class TaskImpl {
 
     static final String END_UUID;
-    static final byte[] END_CMD;
     static final int UUID_LEN = 36;
+    // The last 8 characters of END_UUID are replaced with the job ID in the end marker
+    static final int ID_LEN = 8;
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    // Run commands in a subshell that reports its PID as the first line of STDOUT
+    private static final byte[] KILLABLE_START =
+            "(read -r __P _ </proc/self/stat;echo $__P\n".getBytes(UTF_8);
+    private static final byte[] KILLABLE_END = ")\n".getBytes(UTF_8);
+
+    // Merge STDERR into STDOUT within the shell, so both are written to the same pipe in
+    // the exact order they are produced. The original STDERR is kept in fd 9 and restored
+    // before the end marker is printed, which only goes to STDOUT.
+    private static final byte[] REDIRECT_START = "exec 9>&2 2>&1\n".getBytes(UTF_8);
+    private static final String REDIRECT_END = "exec 2>&9 9>&-;";
 
     static {
         END_UUID = UUID.randomUUID().toString();
-        END_CMD = String
-                .format("__RET=$?;echo %1$s;echo %1$s >&2;echo $__RET;unset __RET\n", END_UUID)
-                .getBytes(UTF_8);
         // UUID_LEN = END_UUID.length();
     }
 
+    private static ScheduledExecutorService timer;
+
+    static synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "libsu-timeout");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return timer;
+    }
+
+    final byte[] marker;
+    final ResultImpl res;
+    final boolean killable;
+    final boolean redirect;
+    // If set, STDOUT is copied as raw bytes instead of lines
+    OutputStream byteOut;
+    private final byte[] endCmd;
     private final List<ShellInputSource> sources;
-    private final ResultImpl res;
+    ShellImpl shell;
 
-    TaskImpl(List<ShellInputSource> sources, ResultImpl res) {
+    // Cancellation states
+    private int pid = 0;
+    private boolean cancelled = false;
+    // Kill the commands after the timeout, counted from when the PID is known
+    long timeoutNanos = 0;
+    private Future<?> timeoutFuture;
+
+    // Completion states, updated by the gobblers of the shell
+    private final AtomicInteger openStreams;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile IOException error;
+    Runnable onComplete;
+
+    TaskImpl(List<ShellInputSource> sources, ResultImpl res, boolean killable, boolean redirect) {
         this.sources = sources;
         this.res = res;
+        this.killable = killable;
+        this.redirect = redirect;
+        // Merged tasks have no end marker on STDERR, only STDOUT is read
+        openStreams = new AtomicInteger(redirect ? 1 : 2);
+        String m = END_UUID.substring(0, UUID_LEN - ID_LEN)
+                + String.format("%08x", nextId.incrementAndGet());
+        marker = m.getBytes(UTF_8);
+        endCmd = (redirect
+                ? String.format("__RET=$?;%1$secho %2$s;echo $__RET;unset __RET\n", REDIRECT_END, m)
+                : String.format("__RET=$?;echo %1$s;echo %1$s >&2;echo $__RET;unset __RET\n", m))
+                .getBytes(UTF_8);
     }
 
-    @Override
-    public void run(@NonNull OutputStream stdin,
-                    @NonNull InputStream stdout,
-                    @NonNull InputStream stderr) throws IOException {
+    /**
+     * Whether the sources are cheap to write and can be batched with other tasks.
+     */
+    static boolean isSmall(List<ShellInputSource> sources) {
+        for (ShellInputSource src : sources) {
+            if (!src.isCommand())
+                return false;
+        }
+        return true;
+    }
 
-        Future<Integer> out = EXECUTOR.submit(new StreamGobbler.OUT(stdout, res.out));
-        Future<Void> err = EXECUTOR.submit(new StreamGobbler.ERR(stderr, res.err));
+    boolean isSmall() {
+        return isSmall(sources);
+    }
+
+    void serve(OutputStream stdin) throws IOException {
+        write(stdin);
+        stdin.flush();
+    }
 
+    /**
+     * Write the task without flushing, so several tasks can be sent at once.
+     */
+    void write(OutputStream stdin) throws IOException {
+        if (redirect)
+            stdin.write(REDIRECT_START);
+        if (killable)
+            stdin.write(KILLABLE_START);
         for (ShellInputSource src : sources)
             src.serve(stdin);
-        stdin.write(END_CMD);
-        stdin.flush();
+        if (killable)
+            stdin.write(KILLABLE_END);
+        stdin.write(endCmd);
+    }
+
+    /**
+     * Called when the PID of the subshell running a killable task is known.
+     */
+    void setPid(int pid) {
+        synchronized (this) {
+            this.pid = pid;
+            if (pid <= 0)
+                return;
+            if (!cancelled) {
+                if (timeoutNanos > 0 && done.getCount() != 0)
+                    timeoutFuture = getTimer().schedule(this::cancel,
+                            timeoutNanos, TimeUnit.NANOSECONDS);
+                return;
+            }
+        }
+        shell.kill(pid);
+    }
 
+    /**
+     * Kill the commands of the task if it is still running.
+     * Only tasks that are killable can actually be stopped.
+     */
+    void cancel() {
+        int p;
+        synchronized (this) {
+            if (cancelled)
+                return;
+            cancelled = true;
+            p = pid;
+        }
+        if (p > 0 && done.getCount() != 0)
+            shell.kill(p);
+    }
+
+    void fail(IOException e) {
+        if (error == null)
+            error = e;
+    }
+
+    /**
+     * Called when one of STDOUT/STDERR reached the end marker of this task.
+     *
+     * @return {@code true} if both streams are done.
+     */
+    boolean streamDone() {
+        return openStreams.decrementAndGet() == 0;
+    }
+
+    void complete() {
+        synchronized (this) {
+            if (timeoutFuture != null)
+                timeoutFuture.cancel(false);
+        }
+        done.countDown();
+        if (onComplete != null)
+            onComplete.run();
+    }
+
+    /**
+     * Wait until both STDOUT and STDERR are done with the task.
+     * If the waiting thread is interrupted, the task is cancelled.
+     */
+    void await() throws IOException {
         try {
-            res.code = out.get();
-            err.get();
-        } catch (ExecutionException | InterruptedException e) {
+            done.await();
+        } catch (InterruptedException e) {
+            cancel();
             throw (InterruptedIOException) new InterruptedIOException().initCause(e);
         }
+        if (error != null)
+            throw error;
+    }
+
+    IOException getError() {
+        return error;
     }
 }
@@ -0,0 +1,123 @@
+package java.io;
+
+import com.superuser.Shell;
+import com.superuser.ShellUtils;
+import com.superuser.internal.Utils;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A FIFO in the cache directory of the application, used to pass the content of a file
+ * between the application and a command running in the shell without going through the
+ * STDIN/STDOUT of the shell.
+ * <p>
+ * The command keeps its shell busy until the application is done with the FIFO, so it runs
+ * on a spare shell with {@link SuFile#newLongJob(String)}; shell calls made meanwhile, even
+ * by the thread using the FIFO, never wait for it.
+ */
+final class ShellFifo {
+
+    // Once the application closed its end, the command only has to drain the pipe buffer
+    private static final long AWAIT_TIMEOUT_SEC = 30;
+
+    private final File fifo;
+    private final String quoted;
+    private final SuFile file;
+    private final boolean write;
+    private CountDownLatch done;
+    private volatile Shell.Result result;
+    private volatile boolean opened;
+
+    /**
+     * Create the FIFO. Commands using it are started with {@link #run(String)}.
+     *
+     * @param write whether the application writes to the FIFO.
+     */
+    ShellFifo(SuFile file, boolean write) throws FileNotFoundException {
+        this.file = file;
+        this.write = write;
+        File dir = Utils.getDeContext(Utils.getContext()).getCacheDir();
+        fifo = new File(dir, "sufile-" + UUID.randomUUID());
+        quoted = ShellUtils.escapedString(fifo.getPath());
+        if (!Shell.sh("mkfifo -m 600 " + quoted).exec().isSuccess())
+            throw new FileNotFoundException("Cannot create FIFO for " + file.getPath());
+    }
+
+    /**
+     * Start the command in the background. The previous command has to be finished
+     * with {@link #await()} before the FIFO is reused.
+     *
+     * @param cmd the command with {@code %s} replaced by the quoted path of the FIFO.
+     */
+    void run(String cmd) {
+        CountDownLatch latch = new CountDownLatch(1);
+        done = latch;
+        opened = false;
+        file.newLongJob(String.format(cmd, quoted)).to(null).submit(null, res -> {
+            if (!opened) {
+                // The command never opened the FIFO, unblock the application
+                try {
+                    if (write)
+                        new FileInputStream(fifo).close();
+                    else
+                        new FileOutputStream(fifo).close();
+                } catch (IOException ignored) {
+                }
+            }
+            result = res;
+            latch.countDown();
+        });
+    }
+
+    /**
+     * Blocks until the command opens the other end of the FIFO.
+     */
+    FileInputStream openInput() throws FileNotFoundException {
+        try {
+            return new FileInputStream(fifo);
+        } finally {
+            opened = true;
+        }
+    }
+
+    /**
+     * Blocks until the command opens the other end of the FIFO.
+     */
+    FileOutputStream openOutput() throws FileNotFoundException {
+        try {
+            return new FileOutputStream(fifo);
+        } finally {
+            opened = true;
+        }
+    }
+
+    /**
+     * @return {@code true} if the command already finished with an error.
+     */
+    boolean failed() {
+        return done.getCount() == 0 && !result.isSuccess();
+    }
+
+    /**
+     * Wait for the command to finish, after the application is done with its end of the FIFO.
+     *
+     * @throws IOException the command failed or did not finish in time.
+     */
+    void await() throws IOException {
+        try {
+            if (!done.await(AWAIT_TIMEOUT_SEC, TimeUnit.SECONDS))
+                throw new IOException("Timed out waiting for the command on " + file.getPath());
+        } catch (InterruptedException e) {
+            throw (InterruptedIOException) new InterruptedIOException().initCause(e);
+        }
+        if (!result.isSuccess())
+            throw new IOException((write ? "Cannot write " : "Cannot read ") +
+                    "file, code " + result.getCode());
+    }
+
+    void delete() {
+        fifo.delete();
+    }
+}
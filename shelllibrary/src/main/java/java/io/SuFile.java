@@ -2,27 +2,124 @@ package java.io;
 
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.superuser.Shell;
 import com.superuser.ShellUtils;
+import com.superuser.internal.MainShell;
+import com.superuser.internal.UiThreadHandler;
+import com.superuser.internal.Utils;
 
 import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SuFile extends File {
 
     //private String[] CMDs;
     private final String filePath;
-    private final boolean canNoRoot;
     private final File file;
 
+    // How the file is accessed, decided on first use unless the constructor requires root
+    private static final int ROUTE_UNKNOWN = 0;
+    private static final int ROUTE_DIRECT = 1;
+    private static final int ROUTE_SHELL = 2;
+    private volatile int route;
+
+    // Attributes fetched with the shell are reused for this long, in nanoseconds
+    private static volatile long cacheTtl = TimeUnit.SECONDS.toNanos(1);
+    private SuFileAttributes attrs;
+    private long attrsTime;
+
+    // Scripts of fetchAttributes(Collection) are split when longer than this many characters
+    private static final int MAX_SCRIPT = 32 * 1024;
+
+    /*
+     * Run after "__I_=INDEX;__P_=PATH;" for each file in fetchAttributes(Collection), in a
+     * subshell. Prints a record of 5 fields, each terminated by NUL: the index, the kind of
+     * the file, the access of the shell to the file, the link target and the stat of dangling
+     * symbolic links. The kind is "f" for existing files, "l" for symbolic links to existing
+     * files, "d" for dangling symbolic links, "n" if the file does not exist, i.e. its closest
+     * existing parent can be searched, or "?" if the shell cannot tell. Files of kind "f" and
+     * "l" are appended to "$@", so they are queried by a single stat call per chunk.
+     * Trailing newlines of link targets are lost.
+     */
+    private static final String MULTI_ACCESS_CMD = SuFileAttributes.accessCmd("__P_") + ";" +
+            "__T_=;__S_=;if [ -L \"$__P_\" ];then __T_=$(readlink \"$__P_\");" +
+            "if [ -e \"$__P_\" ];then __K_=l;set -- \"$@\" \"$__P_\";else __K_=d;" +
+            "__S_=$(stat -c '" + SuFileAttributes.STAT_FMT + "' -- \"$__P_\");fi;" +
+            "elif [ -e \"$__P_\" ];then __K_=f;set -- \"$@\" \"$__P_\";else __D_=$__P_;" +
+            "while __D_=${__D_%/*};[ ! -e \"${__D_:-/}\" ];do :;done;" +
+            "[ -d \"${__D_:-/}\" ]&&[ -x \"${__D_:-/}\" ]&&__K_=n||__K_='?';fi;" +
+            "printf '%s\\0' \"$__I_\" \"$__K_\" \"$__A_\" \"$__T_\" \"$__S_\";";
+
+    // Fields of each record of MULTI_ACCESS_CMD
+    private static final int RECORD_FIELDS = 5;
+
+    // Number of files hashed by each shell command in digest(String, File...)
+    private static final int DIGEST_CHUNK = 16;
+
+    // Number of files passed to each du command in DU_LIST_CMD
+    private static final int DU_CHUNK = 256;
+
+    /*
+     * Prints the names of the subdirectories of $__F_, and "/KB" lines with the disk usage
+     * of the directory itself and of all other entries, computed by one du per DU_CHUNK
+     * entries so the arguments never exceed the limit of the system. Hard links are counted
+     * for every link (du -l), so the result does not depend on how entries are split into
+     * chunks. A du that prints nothing yields an empty "/" line. Returns 1 if $__F_ is not
+     * a directory. Only shell builtins run for each entry.
+     */
+    private static final String DU_LIST_CMD = "(cd \"$__F_\" 2>/dev/null||exit 1;set --;" +
+            "echo \"/$(($(stat -c '%b*%B' . 2>/dev/null||echo 0)/1024))\";" +
+            "__d_(){ u=$(du -kslc -- \"$@\" 2>/dev/null|tail -n1);echo \"/${u%%[!0-9]*}\";};" +
+            "for f in * .*;do if [ -d \"$f\" ]&&[ ! -L \"$f\" ];then " +
+            "[ \"$f\" = . ]||[ \"$f\" = .. ]||echo \"$f\";" +
+            "elif [ -e \"$f\" ]||[ -L \"$f\" ];then set -- \"$@\" \"$f\";" +
+            "[ $# -lt " + DU_CHUNK + " ]||{ __d_ \"$@\";set --;};fi;done;[ $# = 0 ]||__d_ \"$@\")";
+
+    /*
+     * Lists the names in the directory $__F_ as "./NAME" terminated by NUL.
+     * Returns 1 if $__F_ is not a directory.
+     */
+    private static final String LIST_NAMES_CMD = "[ -d \"$__F_\" ]&&(cd \"$__F_\"&&" +
+            "find . -mindepth 1 -maxdepth 1 -print0 2>/dev/null)";
+
+    /*
+     * Lists the directory in $__F_ in 3 sections, each ending with "//\n". Every record
+     * starts with "/NAME/", as a name can contain anything but "/" and NUL:
+     * 1. "/NAME/ACCESS" of each entry, or "/NAME/ACCESSl" followed by a line of the link
+     *    target for symbolic links. Only shell builtins run for each entry.
+     * 2. "/NAME/STAT_FMT" of all entries with a single stat call.
+     * 3. "/NAME/STAT_FMT" of all entries with symbolic links followed.
+     * Returns 1 if $__F_ is not a directory. Runs in a subshell, so the variables of the
+     * shell and its working directory are untouched.
+     */
+    private static final String LIST_CMD = "[ -d \"$__F_\" ]&&(cd \"$__F_\"||exit 1;" +
+            "for __E_ in * .*;do " +
+            "[ -e \"$__E_\" ]||[ -L \"$__E_\" ]||continue;" +
+            SuFileAttributes.accessCmd("__E_") + ";" +
+            "if [ -L \"$__E_\" ];then echo \"/$__E_/${__A_}l\";readlink \"$__E_\";" +
+            "else echo \"/$__E_/$__A_\";fi;done;" +
+            "echo //;stat -c '/%n/" + SuFileAttributes.STAT_FMT + "' -- * .* 2>/dev/null;" +
+            "echo //;stat -Lc '/%n/" + SuFileAttributes.STAT_FMT + "' -- * .* 2>/dev/null;" +
+            "echo //)";
+
     public SuFile(@NonNull File file) {
         this(file.getAbsolutePath(), true);
     }
@@ -30,15 +127,9 @@ public class SuFile extends File {
     public SuFile(@NonNull File file, boolean canNoRoot) {
         super(file.getAbsolutePath());
 
-        this.filePath = "__F_='" + file.getAbsolutePath() + "'";
+        this.filePath = "__F_=" + ShellUtils.escapedString(file.getAbsolutePath());
         this.file = file;
-        if (canNoRoot) {
-            this.canNoRoot = file.canRead();
-        } else {
-            this.canNoRoot = false;
-        }
-
-
+        this.route = canNoRoot ? ROUTE_UNKNOWN : ROUTE_SHELL;
     }
 
     public SuFile(String pathname) {
@@ -83,19 +174,237 @@ public class SuFile extends File {
         return ShellUtils.fastCmdResult(commands);
     }
 
+    /**
+     * @return whether the file can be accessed directly, checked on the first call.
+     */
+    boolean canNoRoot() {
+        int r = route;
+        if (r == ROUTE_UNKNOWN) {
+            r = file.canRead() ? ROUTE_DIRECT : ROUTE_SHELL;
+            route = r;
+        }
+        return r == ROUTE_DIRECT;
+    }
+
+    /**
+     * Create a child from a listing of this directory without any syscall. If this directory
+     * is only accessed with the shell, so is the child; otherwise it is decided on first use.
+     */
+    SuFile child(String name) {
+        return new SuFile(new File(file, name), route != ROUTE_SHELL);
+    }
+
+    /**
+     * @return a job running the command with {@code $__F_} set to this path,
+     * scheduled like {@link Shell#sh(String...)}.
+     */
+    Shell.Job newJob(String c) {
+        return Shell.sh(filePath, c);
+    }
+
+    /**
+     * Like {@link #newJob(String)}, for commands that keep their shell busy until the
+     * application is done with them, e.g. while it reads or writes a FIFO. The job runs
+     * on a spare shell, see {@link MainShell#newLongJob(boolean, String...)}.
+     */
+    Shell.Job newLongJob(String c) {
+        return MainShell.newLongJob(false, filePath, c);
+    }
+
+    /**
+     * @return a job of the shell running the command with {@code $__F_} set to this path.
+     */
+    Shell.Job newJob(Shell shell, String c) {
+        return shell.newJob().add(filePath, c);
+    }
+
+    /**
+     * Set how long the attributes fetched with the shell are reused by all {@code SuFile}s.
+     * Operations modifying a file through the same {@code SuFile} object always discard
+     * its cached attributes. The default is 1 second.
+     *
+     * @param ttl  the time to live, 0 to fetch the attributes for every query.
+     * @param unit the time unit of {@code ttl}.
+     */
+    public static void setAttributeCacheTtl(long ttl, @NonNull TimeUnit unit) {
+        cacheTtl = Math.max(unit.toNanos(ttl), 0);
+    }
+
+    /**
+     * Returns the attributes of the file denoted by this abstract pathname,
+     * using the cached snapshot if it is not expired.
+     * <p>
+     * Requires command {@code stat}, and {@code readlink} for symbolic links.
+     *
+     * @see #refresh()
+     */
+    @NonNull
+    public synchronized SuFileAttributes getAttributes() {
+        if (attrs == null || System.nanoTime() - attrsTime >= cacheTtl)
+            return refresh();
+        return attrs;
+    }
+
+    /**
+     * Fetch the attributes of the file denoted by this abstract pathname with one
+     * shell command, and replace the cached snapshot.
+     * <p>
+     * Requires command {@code stat}, and {@code readlink} for symbolic links.
+     *
+     * @return the new snapshot.
+     */
+    @NonNull
+    public synchronized SuFileAttributes refresh() {
+        List<String> out = Shell.getShell().newJob()
+                .add(filePath, SuFileAttributes.STAT_CMD).to(new ArrayList<>(), null).exec().getOut();
+        attrs = SuFileAttributes.parse(out, 0);
+        attrsTime = System.nanoTime();
+        return attrs;
+    }
+
+    private synchronized void setAttributes(SuFileAttributes a, long time) {
+        attrs = a;
+        attrsTime = time;
+    }
+
+    synchronized boolean modified(boolean result) {
+        attrs = null;
+        return result;
+    }
+
+    /**
+     * Fetch the attributes of many files at once and replace their cached snapshots,
+     * so that following queries of the attributes of these files do not cost extra
+     * shell calls until the cached attributes expire.
+     * <p>
+     * All files are queried by a single job in the main shell, sent in chunks of limited
+     * length; each chunk only runs {@code stat} twice, and {@code readlink} for symbolic
+     * links. Each file is reported in a record of NUL terminated fields that starts with its
+     * index, so paths may contain any character, including newlines. Files that do not exist
+     * are cached as such; files that cannot be queried, e.g. the shell has no permission to
+     * search their directory, are left uncached. If a file of a chunk is created or deleted
+     * while the chunk is queried, the existing files of that chunk are left uncached too.
+     * <p>
+     * Requires command {@code stat} and {@code printf}, and {@code readlink} for symbolic links.
+     *
+     * @return the new snapshots in the iteration order of {@code files}; an element is
+     * {@code null} if the query of the file failed, e.g. the shell died or cannot search
+     * the directory of the file.
+     * @see #getAttributes()
+     */
+    @NonNull
+    public static SuFileAttributes[] fetchAttributes(@NonNull Collection<? extends SuFile> files) {
+        SuFile[] fs = files.toArray(new SuFile[0]);
+        SuFileAttributes[] result = new SuFileAttributes[fs.length];
+        if (fs.length == 0)
+            return result;
+
+        // Split into scripts of limited length, see MULTI_ACCESS_CMD
+        List<String> scripts = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        StringBuilder access = new StringBuilder();
+        int count = 0;
+        for (int i = 0; i < fs.length; ++i) {
+            access.append("__I_=").append(i).append(";__P_=")
+                    .append(ShellUtils.escapedString(fs[i].getAbsolutePath()))
+                    .append(';').append(MULTI_ACCESS_CMD);
+            ++count;
+            if (access.length() >= MAX_SCRIPT || i == fs.length - 1) {
+                scripts.add("(set --;" + access + "stat -c '" +
+                        SuFileAttributes.STAT_FMT + "' -- \"$@\";printf '\\0';stat -Lc '" +
+                        SuFileAttributes.STAT_FMT + "' -- \"$@\";printf '\\0') 2>/dev/null");
+                counts.add(count);
+                access.setLength(0);
+                count = 0;
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Shell.getShell().newJob().add(scripts.toArray(new String[0])).toBytes(bytes).exec();
+        String[] out = new String(bytes.toByteArray(), Utils.UTF_8).split("\0", -1);
+        long now = System.nanoTime();
+        int pos = 0, i = 0;
+        for (int c : counts) {
+            // Output ends before the end of the chunk, the query failed
+            if (pos + c * RECORD_FIELDS + 2 >= out.length)
+                break;
+            // The records of the files, then the stats of the existing files and their targets
+            int records = pos, existing = 0;
+            for (int j = 0; j < c; ++j, pos += RECORD_FIELDS) {
+                if (!out[pos].equals(Integer.toString(i + j)))
+                    return result;
+                String kind = out[pos + 1];
+                if (kind.equals("f") || kind.equals("l"))
+                    ++existing;
+            }
+            String[] stats = lines(out[pos++]);
+            String[] targets = lines(out[pos++]);
+            // A file was deleted or created between the records and stat
+            boolean complete = stats.length == existing && targets.length == existing;
+            int k = 0;
+            for (int j = 0; j < c; ++j, ++i) {
+                int r = records + j * RECORD_FIELDS;
+                String kind = out[r + 1], acc = out[r + 2], link = out[r + 3];
+                SuFileAttributes a = null;
+                switch (kind) {
+                    case "n":
+                        // Only cache files known not to exist, other failures are left uncached
+                        a = SuFileAttributes.NONEXISTENT;
+                        break;
+                    case "d":
+                        a = parseAttributes(out[r + 4], acc, null, link);
+                        break;
+                    case "f":
+                    case "l":
+                        if (complete) {
+                            a = kind.equals("f") ? parseAttributes(stats[k], acc, null, null) :
+                                    parseAttributes(stats[k], acc, targets[k], link);
+                        }
+                        ++k;
+                        break;
+                }
+                if (a != null)
+                    fs[i].setAttributes(a, now);
+                result[i] = a;
+            }
+        }
+        return result;
+    }
+
+    private static String[] lines(String s) {
+        return s.isEmpty() ? new String[0] : s.split("\n");
+    }
+
+    /**
+     * @return the attributes of lines of {@link SuFileAttributes#STAT_FMT}, or {@code null}
+     * if the lines are invalid.
+     */
+    private static SuFileAttributes parseAttributes(String stat, String access, String target,
+                                                    String linkTarget) {
+        String[] fields = stat.split(" ", 7);
+        String[] targetFields = target == null ? null : target.split(" ", 7);
+        if (fields.length != 7 || (targetFields != null && targetFields.length != 7))
+            return null;
+        try {
+            return new SuFileAttributes(fields, access, targetFields, linkTarget);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     @Override
     public boolean canExecute() {
-        return file.canExecute() || cmdBool("[ -x \"$__F_\" ]");
+        return file.canExecute() || getAttributes().canExecute();
     }
 
     @Override
     public boolean canRead() {
-        return file.canRead() || cmdBool("[ -r \"$__F_\" ]");
+        return file.canRead() || getAttributes().canRead();
     }
 
     @Override
     public boolean canWrite() {
-        return file.canWrite() || cmdBool("[ -w \"$__F_\" ]");
+        return file.canWrite() || getAttributes().canWrite();
     }
 
     /**
@@ -109,9 +418,9 @@ public class SuFile extends File {
     @Override
     public boolean createNewFile() {
         try {
-            return file.createNewFile();
+            return modified(file.createNewFile());
         } catch (IOException e) {
-            return cmdBool("[ ! -e \"$__F_\" ] && touch \"$__F_\"");
+            return modified(cmdBool("[ ! -e \"$__F_\" ] && touch \"$__F_\""));
         }
     }
 
@@ -127,7 +436,7 @@ public class SuFile extends File {
     @Override
     public boolean delete() {
 
-        return file.delete() || cmdBool("rm -f \"$__F_\" || rmdir -f \"$__F_\"");
+        return modified(file.delete() || cmdBool("rm -f \"$__F_\" || rmdir -f \"$__F_\""));
     }
 
     /**
@@ -140,7 +449,7 @@ public class SuFile extends File {
      * @see File#delete()
      */
     public boolean deleteRecursive() {
-        return cmdBool("rm -rf \"$__F_\"");
+        return modified(cmdBool("rm -rf \"$__F_\""));
     }
 
     /**
@@ -150,7 +459,7 @@ public class SuFile extends File {
      * @return true if operation succeed
      */
     public boolean clear() {
-        return cmdBool("echo -n > \"$__F_\"");
+        return modified(cmdBool("echo -n > \"$__F_\""));
     }
 
     /**
@@ -164,7 +473,7 @@ public class SuFile extends File {
     @Override
     public boolean exists() {
 
-        return canNoRoot ? file.exists() : cmdBool("[ -e \"$__F_\" ]");
+        return canNoRoot() ? file.exists() : getAttributes().exists();
     }
 
     @NonNull
@@ -236,7 +545,7 @@ public class SuFile extends File {
      */
     @Override
     public long getFreeSpace() {
-        return canNoRoot ? file.getFreeSpace() : statFS("%f");
+        return canNoRoot() ? file.getFreeSpace() : statFS("%f");
     }
 
     /**
@@ -248,7 +557,7 @@ public class SuFile extends File {
      */
     @Override
     public long getTotalSpace() {
-        return canNoRoot ? file.getTotalSpace() : statFS("%b");
+        return canNoRoot() ? file.getTotalSpace() : statFS("%b");
     }
 
     /**
@@ -260,38 +569,38 @@ public class SuFile extends File {
      */
     @Override
     public long getUsableSpace() {
-        return canNoRoot ? file.getUsableSpace() : statFS("%a");
+        return canNoRoot() ? file.getUsableSpace() : statFS("%a");
     }
 
     @Override
     public boolean isDirectory() {
-        return canNoRoot ? file.isDirectory() : cmdBool("[ -d \"$__F_\" ]");
+        return canNoRoot() ? file.isDirectory() : getAttributes().isDirectory();
     }
 
     @Override
     public boolean isFile() {
-        return canNoRoot ? file.isFile() : cmdBool("[ -f \"$__F_\" ]");
+        return canNoRoot() ? file.isFile() : getAttributes().isFile();
     }
 
     /**
      * @return true if the abstract pathname denotes a block device.
      */
     public boolean isBlock() {
-        return cmdBool("[ -b \"$__F_\" ]");
+        return getAttributes().isBlock();
     }
 
     /**
      * @return true if the abstract pathname denotes a character device.
      */
     public boolean isCharacter() {
-        return cmdBool("[ -c \"$__F_\" ]");
+        return getAttributes().isCharacter();
     }
 
     /**
      * @return true if the abstract pathname denotes a symbolic link file.
      */
     public boolean isSymlink() {
-        return cmdBool("[ -L \"$__F_\" ]");
+        return getAttributes().isSymlink();
     }
 
     /**
@@ -304,14 +613,7 @@ public class SuFile extends File {
      */
     @Override
     public long lastModified() {
-        if (canNoRoot) {
-            return file.lastModified();
-        }
-        try {
-            return Long.parseLong(cmd("stat -c '%Y' \"$__F_\"")) * 1000;
-        } catch (NumberFormatException e) {
-            return 0L;
-        }
+        return canNoRoot() ? file.lastModified() : getAttributes().lastModified();
     }
 
     /**
@@ -323,15 +625,7 @@ public class SuFile extends File {
      */
     @Override
     public long length() {
-        if (canNoRoot) {
-            return file.length();
-        }
-        try {
-            return Long.parseLong(cmd("stat -c '%s' \"$__F_\""));
-        } catch (NumberFormatException e) {
-            return 0L;
-
-        }
+        return canNoRoot() ? file.length() : getAttributes().length();
     }
 
     /**
@@ -343,7 +637,7 @@ public class SuFile extends File {
      */
     @Override
     public boolean mkdir() {
-        return file.mkdir() || cmdBool("mkdir \"$__F_\"");
+        return modified(file.mkdir() || cmdBool("mkdir \"$__F_\""));
     }
 
     /**
@@ -356,7 +650,7 @@ public class SuFile extends File {
      */
     @Override
     public boolean mkdirs() {
-        return file.mkdirs() || cmdBool("mkdir -p \"$__F_\"");
+        return modified(file.mkdirs() || cmdBool("mkdir -p \"$__F_\""));
     }
 
     /**
@@ -368,11 +662,15 @@ public class SuFile extends File {
      */
     @Override
     public boolean renameTo(@NonNull File dest) {
-        return file.renameTo(dest) || cmdBool("mv -f \"$__F_\" '" + dest.getAbsolutePath() + "'");
+        return modified(file.renameTo(dest)
+                || cmdBool("mv -f \"$__F_\" " + ShellUtils.escapedString(dest.getAbsolutePath())));
     }
 
     private boolean setPerms(boolean set, boolean ownerOnly, int b) {
-        char[] perms = cmd("stat -c '%a' \"$__F_\"").toCharArray();
+        SuFileAttributes a = refresh();
+        if (!a.exists())
+            return false;
+        char[] perms = String.format("%03o", a.getPermissions() & 0777).toCharArray();
         for (int i = 0; i < perms.length; ++i) {
             int perm = perms[i] - '0';
             if (set && (!ownerOnly || i == 0))
@@ -381,7 +679,7 @@ public class SuFile extends File {
                 perm &= ~(b);
             perms[i] = (char) (perm + '0');
         }
-        return cmdBool("chmod " + new String(perms) + " \"$__F_\"");
+        return modified(cmdBool("chmod " + new String(perms) + " \"$__F_\""));
     }
 
     /**
@@ -394,7 +692,8 @@ public class SuFile extends File {
      */
     @Override
     public boolean setExecutable(boolean executable, boolean ownerOnly) {
-        return file.setExecutable(executable, ownerOnly) || setPerms(executable, ownerOnly, 0x1);
+        return modified(file.setExecutable(executable, ownerOnly))
+                || setPerms(executable, ownerOnly, 0x1);
     }
 
 
@@ -408,7 +707,8 @@ public class SuFile extends File {
      */
     @Override
     public boolean setReadable(boolean readable, boolean ownerOnly) {
-        return file.setReadable(readable, ownerOnly) || setPerms(readable, ownerOnly, 0x4);
+        return modified(file.setReadable(readable, ownerOnly))
+                || setPerms(readable, ownerOnly, 0x4);
     }
 
     /**
@@ -421,11 +721,12 @@ public class SuFile extends File {
      */
     @Override
     public boolean setWritable(boolean writable, boolean ownerOnly) {
-        return file.setWritable(writable, ownerOnly) || setPerms(writable, ownerOnly, 0x2);
+        return modified(file.setWritable(writable, ownerOnly))
+                || setPerms(writable, ownerOnly, 0x2);
     }
 
     public boolean setChmod(int chmod) {
-        return cmdBool("chmod " + chmod + " \"$__F_\"");
+        return modified(cmdBool("chmod " + chmod + " \"$__F_\""));
     }
 
     /**
@@ -438,7 +739,8 @@ public class SuFile extends File {
      */
     @Override
     public boolean setReadOnly() {
-        return file.setReadOnly() || setWritable(false, false) && setExecutable(false, false);
+        return modified(file.setReadOnly())
+                || setWritable(false, false) && setExecutable(false, false);
     }
 
     /**
@@ -456,105 +758,301 @@ public class SuFile extends File {
     public boolean setLastModified(long time) {
         DateFormat df = new SimpleDateFormat("yyyyMMddHHmm", Locale.US);
         String date = df.format(new Date(time));
-        return file.setLastModified(time) || cmdBool("[ -e \"$__F_\" ] && touch -t " + date + " \"$__F_\"");
+        return modified(file.setLastModified(time)
+                || cmdBool("[ -e \"$__F_\" ] && touch -t " + date + " \"$__F_\""));
     }
 
     @Override
     public String[] list() {
-        return canNoRoot ? file.list(null) : list(null);
+        return canNoRoot() ? file.list(null) : list(null);
     }
 
+    /**
+     * Returns an array of strings naming the files and directories in the
+     * directory denoted by this abstract pathname.
+     * <p>
+     * If the directory is not accessible without root, the names are read from the shell
+     * as NUL separated raw bytes, so names containing newlines are returned correctly,
+     * and the filter is applied while the output is parsed.
+     * <p>
+     * Requires command {@code find}.
+     *
+     * @see File#list(FilenameFilter)
+     */
     @Override
     public String[] list(FilenameFilter filter) {
-        if (canNoRoot) {
+        if (canNoRoot()) {
 
             if (!file.isDirectory()) {
                 return null;
             }
             return file.list(filter);
 
-        } else if (!isDirectory()) {
+        }
+        NameParser parser = new NameParser(this, filter);
+        if (!newJob(LIST_NAMES_CMD).toBytes(parser).exec().isSuccess())
             return null;
+        return parser.getNames();
+    }
+
+    /**
+     * Splits the output of {@link #LIST_NAMES_CMD} into names without decoding it as lines.
+     */
+    private static class NameParser extends OutputStream {
+
+        private final File dir;
+        private final FilenameFilter filter;
+        private byte[] pending = new byte[256];
+        private int pendingLen = 0;
+        private String[] names = new String[64];
+        private int count = 0;
+
+        NameParser(File dir, FilenameFilter filter) {
+            this.dir = dir;
+            this.filter = filter;
         }
-        FilenameFilter defFilter = new FilenameFilter() {
-            @Override
-            public boolean accept(File file, String name) {
-                return name.equals(".") || name.equals("..");
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) {
+            int end = off + len;
+            int start = off;
+            for (int i = off; i < end; ++i) {
+                byte c = b[i];
+                if (c != 0)
+                    continue;
+                if (pendingLen == 0) {
+                    emit(b, start, i - start);
+                } else {
+                    append(b, start, i - start);
+                    emit(pending, 0, pendingLen);
+                    pendingLen = 0;
+                }
+                start = i + 1;
             }
-        };
-        String[] commands = new String[]{filePath, "ls -a \"$__F_\""};
-        //List<String> out = foreverShellUtils.execCommand(commands).getListSuccessMsg();
-        List<String> out = Shell.su(commands).to(new LinkedList<>(), null).exec().getOut();
-        String name;
-        for (ListIterator<String> it = out.listIterator(); it.hasNext(); ) {
-            name = it.next();
-            if (filter != null && !filter.accept(this, name)) {
-                it.remove();
+            append(b, start, end - start);
+        }
+
+        private void append(byte[] b, int off, int len) {
+            if (pendingLen + len > pending.length)
+                pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLen + len));
+            System.arraycopy(b, off, pending, pendingLen, len);
+            pendingLen += len;
+        }
+
+        private void emit(byte[] b, int off, int len) {
+            // Each name is prefixed with "./"
+            if (len <= 2)
+                return;
+            String name = new String(b, off + 2, len - 2, Utils.UTF_8);
+            if (filter != null && !filter.accept(dir, name))
+                return;
+            if (count == names.length)
+                names = Arrays.copyOf(names, count * 2);
+            names[count++] = name;
+        }
+
+        String[] getNames() {
+            return count == names.length ? names : Arrays.copyOf(names, count);
+        }
+    }
+
+    /**
+     * List the directory with the attributes of all entries in one shell command.
+     * The returned files are populated with the attributes.
+     *
+     * @return the entries accepted by the filters, or {@code null} if this is not a directory.
+     */
+    SuFile[] listWithAttributes(FilenameFilter nameFilter, FileFilter fileFilter) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (!Shell.getShell().newJob().add(filePath, LIST_CMD).toBytes(bytes).exec().isSuccess())
+            return null;
+        ListParser parser = new ListParser(new String(bytes.toByteArray(), Utils.UTF_8));
+
+        // Section 1: names, access and link targets
+        ArrayList<String[]> entries = new ArrayList<>();
+        for (String[] r; (r = parser.next()) != null; ) {
+            String access = r[1];
+            String target = null;
+            if (access.endsWith("l")) {
+                access = access.substring(0, access.length() - 1);
+                target = parser.nextTarget();
+            }
+            entries.add(new String[]{r[0], access, target});
+        }
+        // Section 2 and 3: stats of the entries and of the link targets
+        HashMap<String, String[]> stats = new HashMap<>();
+        HashMap<String, String[]> targets = new HashMap<>();
+        for (HashMap<String, String[]> map : Arrays.asList(stats, targets)) {
+            for (String[] r; (r = parser.next()) != null; ) {
+                String[] fields = r[1].split(" ", 7);
+                if (fields.length == 7)
+                    map.put(r[0], fields);
+            }
+        }
+
+        long now = System.nanoTime();
+        ArrayList<SuFile> files = new ArrayList<>();
+        for (String[] e : entries) {
+            String name = e[0];
+            if (name.equals(".") || name.equals(".."))
                 continue;
+            if (nameFilter != null && !nameFilter.accept(this, name))
+                continue;
+            SuFile f = child(name);
+            String[] stat = stats.get(name);
+            if (stat != null) {
+                try {
+                    f.attrs = new SuFileAttributes(stat, e[1],
+                            e[2] == null ? null : targets.get(name), e[2]);
+                    f.attrsTime = now;
+                } catch (NumberFormatException ignored) {
+                    // Leave the attributes to be fetched when needed
+                }
             }
-            if (defFilter.accept(this, name))
-                it.remove();
+            if (fileFilter == null || fileFilter.accept(f))
+                files.add(f);
         }
-        return out.toArray(new String[0]);
+        return files.toArray(new SuFile[0]);
     }
 
+    /**
+     * Reads the records of {@link #LIST_CMD}. Names are delimited by "/" instead of line
+     * breaks, so names containing newlines are read correctly.
+     */
+    private static class ListParser {
+
+        private final String out;
+        private int pos = 0;
+
+        ListParser(String out) {
+            this.out = out;
+        }
+
+        private String line() {
+            int end = out.indexOf('\n', pos);
+            if (end < 0)
+                end = out.length();
+            String line = out.substring(pos, end);
+            pos = Math.min(end + 1, out.length());
+            return line;
+        }
+
+        /**
+         * @return the name and the rest of the next record, or {@code null} at the end of
+         * the section.
+         */
+        String[] next() {
+            while (pos < out.length()) {
+                if (out.startsWith("//\n", pos)) {
+                    pos += 3;
+                    return null;
+                }
+                int slash = out.charAt(pos) == '/' ? out.indexOf('/', pos + 1) : -1;
+                if (slash < 0) {
+                    // Not a record, e.g. a line of an error message
+                    line();
+                    continue;
+                }
+                String name = out.substring(pos + 1, slash);
+                pos = slash + 1;
+                return new String[]{name, line()};
+            }
+            return null;
+        }
+
+        /**
+         * @return the link target following a record, including lines of the target that
+         * do not look like the start of a record.
+         */
+        String nextTarget() {
+            StringBuilder target = new StringBuilder(line());
+            while (pos < out.length() && out.charAt(pos) != '/')
+                target.append('\n').append(line());
+            return target.toString();
+        }
+    }
+
+    /**
+     * Returns an array of abstract pathnames denoting the files in the
+     * directory denoted by this abstract pathname.
+     * <p>
+     * If the directory is not accessible without root, the attributes of all entries are
+     * fetched together with the listing in a single shell command, so querying the
+     * attributes of the returned files does not cost extra shell calls until the cached
+     * attributes expire.
+     * <p>
+     * Requires command {@code stat}, and {@code readlink} for symbolic links.
+     *
+     * @see File#listFiles()
+     * @see #getAttributes()
+     */
     @Override
     public SuFile[] listFiles() {
         String[] ss;
-        if (canNoRoot) {
+        if (canNoRoot()) {
             if (!file.isDirectory()) {
                 return null;
             }
             ss = file.list();
-        } else if (!isDirectory()) {
-            return null;
         } else {
-            ss = list();
+            return listWithAttributes(null, null);
         }
         if (ss == null) return null;
         int n = ss.length;
         SuFile[] fs = new SuFile[n];
         for (int i = 0; i < n; i++) {
-            fs[i] = new SuFile(this, ss[i]);
+            fs[i] = child(ss[i]);
         }
         return fs;
     }
 
+    /**
+     * @see #listFiles()
+     */
     @Override
     public SuFile[] listFiles(FilenameFilter filter) {
         String[] ss;
-        if (canNoRoot) {
+        if (canNoRoot()) {
             if (!file.isDirectory()) {
                 return null;
             }
             ss = file.list(filter);
-        } else if (!isDirectory()) {
-            return null;
         } else {
-            ss = list(filter);
+            return listWithAttributes(filter, null);
         }
         if (ss == null) return null;
         int n = ss.length;
         SuFile[] fs = new SuFile[n];
         for (int i = 0; i < n; i++) {
-            fs[i] = new SuFile(this, ss[i]);
+            fs[i] = child(ss[i]);
         }
 
         return fs;
     }
 
+    /**
+     * The files passed to the filter are already populated with their attributes,
+     * so filtering by type, length or time does not cost extra shell calls.
+     *
+     * @see #listFiles()
+     */
     @Override
     public SuFile[] listFiles(FileFilter filter) {
         String[] ss;
-        if (canNoRoot) {
+        if (canNoRoot()) {
             ss = file.list();
-        } else {
-            ss = list();
             if (ss == null) return null;
+        } else {
+            return listWithAttributes(null, filter);
         }
         ArrayList<SuFile> files = new ArrayList<>();
         for (String s : ss) {
-            SuFile f = new SuFile(this, s);
+            SuFile f = child(s);
             if ((filter == null) || filter.accept(f))
                 files.add(f);
         }
@@ -562,5 +1060,469 @@ public class SuFile extends File {
 
     }
 
+    /**
+     * Compute the digest of the content of the file denoted by this abstract pathname.
+     *
+     * @see #digest(String, File...)
+     */
+    @Nullable
+    public String digest(@NonNull String algorithm) {
+        return digest(algorithm, this)[0];
+    }
+
+    /**
+     * Compute the digests of the content of files without transferring the content to
+     * the application.
+     * <p>
+     * Files that can be read without root are hashed with {@link MessageDigest}. All other
+     * files are hashed in the shell with a single command per {@value #DIGEST_CHUNK}
+     * files, and only the digests are returned. These commands are submitted together
+     * like {@link Shell#sh(String...)}, so they run in parallel if the shell pool is
+     * larger than 1.
+     * <p>
+     * Requires command {@code md5sum}, {@code sha1sum} or {@code sha*sum}
+     * matching the algorithm.
+     *
+     * @param algorithm one of {@code MD5}, {@code SHA-1}, {@code SHA-224}, {@code SHA-256},
+     *                  {@code SHA-384} or {@code SHA-512}.
+     * @return the lowercase hex digests in the same order as {@code files}, {@code null} for
+     * files that cannot be read.
+     * @throws IllegalArgumentException the algorithm is not supported.
+     */
+    @NonNull
+    public static String[] digest(@NonNull String algorithm, @NonNull File... files) {
+        String name = algorithm.toUpperCase(Locale.US).replace("-", "");
+        switch (name) {
+            case "MD5":
+                break;
+            case "SHA1":
+            case "SHA224":
+            case "SHA256":
+            case "SHA384":
+            case "SHA512":
+                name = "SHA-" + name.substring(3);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported algorithm " + algorithm);
+        }
+        String sum = name.replace("-", "").toLowerCase(Locale.US) + "sum";
+
+        String[] digests = new String[files.length];
+        SuFile[] fs = new SuFile[files.length];
+        List<Integer> remote = new ArrayList<>();
+        for (int i = 0; i < files.length; ++i) {
+            fs[i] = files[i] instanceof SuFile ? (SuFile) files[i] : new SuFile(files[i]);
+            if (!fs[i].canNoRoot())
+                remote.add(i);
+        }
+
+        // Submit all shell commands before hashing local files
+        CountDownLatch latch = new CountDownLatch((remote.size() + DIGEST_CHUNK - 1) / DIGEST_CHUNK);
+        for (int start = 0; start < remote.size(); start += DIGEST_CHUNK) {
+            List<Integer> chunk = remote.subList(start, Math.min(start + DIGEST_CHUNK, remote.size()));
+            StringBuilder sb = new StringBuilder(sum);
+            for (int i : chunk)
+                sb.append(' ').append(ShellUtils.escapedString(fs[i].getAbsolutePath()));
+            sb.append(" 2>/dev/null");
+            Shell.sh(sb.toString()).submit(null, res -> {
+                try {
+                    // Each line is "DIGEST  PATH". If the path contains a backslash or a newline,
+                    // the line starts with a backslash and these are escaped in the path
+                    HashMap<String, String> map = new HashMap<>();
+                    for (String line : res.getOut()) {
+                        boolean escaped = line.startsWith("\\");
+                        if (escaped)
+                            line = line.substring(1);
+                        int sp = line.indexOf(' ');
+                        if (sp > 0 && line.length() > sp + 2) {
+                            String path = line.substring(sp + 2);
+                            map.put(escaped ? unescapeSum(path) : path, line.substring(0, sp));
+                        }
+                    }
+                    for (int i : chunk)
+                        digests[i] = map.get(fs[i].getAbsolutePath());
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        byte[] buf = null;
+        for (int i = 0; i < fs.length; ++i) {
+            if (!fs[i].canNoRoot())
+                continue;
+            if (buf == null)
+                buf = new byte[64 * 1024];
+            try (InputStream in = new FileInputStream(fs[i].getPath())) {
+                MessageDigest md = MessageDigest.getInstance(name);
+                for (int n; (n = in.read(buf)) > 0; )
+                    md.update(buf, 0, n);
+                StringBuilder sb = new StringBuilder();
+                for (byte b : md.digest())
+                    sb.append(String.format("%02x", b & 0xFF));
+                digests[i] = sb.toString();
+            } catch (IOException | NoSuchAlgorithmException ignored) {
+            }
+        }
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return digests;
+    }
+
+    private static String unescapeSum(String path) {
+        StringBuilder sb = new StringBuilder(path.length());
+        for (int i = 0; i < path.length(); ++i) {
+            char c = path.charAt(i);
+            if (c == '\\' && i + 1 < path.length()) {
+                c = path.charAt(++i);
+                if (c == 'n')
+                    c = '\n';
+                else if (c == 'r')
+                    c = '\r';
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the directory denoted by this abstract pathname as a tar archive to a file.
+     *
+     * @see #archive(OutputStream, ProgressCallback)
+     */
+    public void archive(@NonNull File dest, @Nullable ProgressCallback callback)
+            throws IOException {
+        try (OutputStream out = new FileOutputStream(dest)) {
+            archive(out, callback);
+        }
+    }
+
+    /**
+     * Write the directory denoted by this abstract pathname as a tar archive to a stream.
+     * <p>
+     * The archive is created by {@code tar} in the shell and copied from its STDOUT as raw
+     * bytes in large chunks, see {@link Shell.Job#toBytes(OutputStream)}. Paths in the
+     * archive are relative to this directory. The stream is not closed. {@code tar} runs on a
+     * spare shell, so shell calls made while {@code out} is consumed never wait for it.
+     * <p>
+     * Requires command {@code tar}.
+     *
+     * @param out      the stream to receive the archive.
+     * @param callback the callback to receive the number of bytes written so far,
+     *                 called on the thread copying the output.
+     * @throws IOException the directory cannot be archived, or writing to {@code out} failed.
+     */
+    public void archive(@NonNull OutputStream out, @Nullable ProgressCallback callback)
+            throws IOException {
+        OutputStream counter = new FilterOutputStream(out) {
+            long total = 0;
+
+            @Override
+            public void write(@NonNull byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                total += len;
+                if (callback != null)
+                    callback.onProgress(total);
+            }
+        };
+        Shell.Result result = newLongJob("tar -cf - -C \"$__F_\" . 2>/dev/null")
+                .toBytes(counter).exec();
+        if (!result.isSuccess())
+            throw new IOException("Cannot archive " + getPath() + ", code " + result.getCode());
+    }
+
+    /**
+     * Extract a tar archive from a file into the directory denoted by this abstract pathname.
+     *
+     * @see #extract(InputStream, ProgressCallback)
+     */
+    public void extract(@NonNull File archive, @Nullable ProgressCallback callback)
+            throws IOException {
+        try (InputStream in = new FileInputStream(archive)) {
+            extract(in, callback);
+        }
+    }
+
+    /**
+     * Extract a tar archive from a stream into the directory denoted by this abstract
+     * pathname, creating the directory if it does not exist.
+     * <p>
+     * The archive is passed to {@code tar} in the shell through a FIFO in the cache
+     * directory of the application, like {@link SuFileOutputStream}. The stream is read
+     * until the end but not closed.
+     * <p>
+     * Requires command {@code mkfifo}, {@code tar} and {@code cat}.
+     *
+     * @param in       the stream of the archive.
+     * @param callback the callback to receive the number of bytes read so far,
+     *                 called on the current thread.
+     * @throws IOException the archive cannot be extracted, or reading from {@code in} failed.
+     */
+    public void extract(@NonNull InputStream in, @Nullable ProgressCallback callback)
+            throws IOException {
+        ShellFifo fifo = new ShellFifo(this, true);
+        try {
+            // Drain whatever tar leaves unread so writing never fails with a broken pipe
+            fifo.run("mkdir -p \"$__F_\"&&(tar -xf - -C \"$__F_\" 2>/dev/null;" +
+                    "__C_=$?;cat >/dev/null;exit $__C_)<%s");
+            try (OutputStream out = fifo.openOutput()) {
+                if (fifo.failed())
+                    throw new IOException("Cannot extract to " + getPath());
+                byte[] buf = new byte[64 * 1024];
+                long total = 0;
+                for (int n; (n = in.read(buf)) > 0; ) {
+                    out.write(buf, 0, n);
+                    total += n;
+                    if (callback != null)
+                        callback.onProgress(total);
+                }
+            }
+            fifo.await();
+        } finally {
+            fifo.delete();
+            modified(true);
+        }
+    }
 
+    /**
+     * Open the directory denoted by this abstract pathname for lazy iteration.
+     * <p>
+     * Unlike {@link #list()} and {@link #listFiles()}, the entries are not collected
+     * before returning: they are read from a single {@code find} command in the order of the
+     * directory, only as fast as they are consumed, so huge directories are iterated in
+     * constant memory. If this is not a directory, the iterator is empty.
+     * <p>
+     * The command runs in the background like {@link Shell.Job#stream()}, on a spare shell
+     * that is busy until the returned iterator is consumed or closed; querying the returned
+     * files meanwhile does not wait for it. The returned files are created like the ones of
+     * {@link #listFiles()}.
+     * <p>
+     * Requires command {@code find}.
+     *
+     * @param filter the filter of the names, {@code null} to accept all entries.
+     * @return an iterator of the entries; always close the iterator when done.
+     */
+    @NonNull
+    public SuFileIterator openDirectory(@Nullable FilenameFilter filter) {
+        return new SuFileIterator(MainShell.streamRecords(newJob("cd \"$__F_\"&&" +
+                "find . -mindepth 1 -maxdepth 1 -print0 2>/dev/null")), this, filter);
+    }
+
+    /**
+     * Compute the disk usage of the directory denoted by this abstract pathname.
+     * Results are delivered on the main thread.
+     *
+     * @see #diskUsage(Executor, DiskUsageCallback)
+     */
+    public void diskUsage(@NonNull DiskUsageCallback callback) {
+        diskUsage(UiThreadHandler.executor, callback);
+    }
+
+    /**
+     * Compute the disk usage of the directory denoted by this abstract pathname in the
+     * background, reporting each subdirectory as soon as its total is known.
+     * <p>
+     * The subdirectories are listed with shell builtins, then the usage of each of them is
+     * computed by a separate {@code du} command. These commands are submitted together like
+     * {@link Shell#sh(String...)}, so they run in parallel if the shell pool is larger than 1.
+     * Symbolic links are not followed. The usage reported for this directory includes the
+     * directory itself and all entries that are not directories.
+     * <p>
+     * Files with several hard links are counted once for each link, as the entries are split
+     * into several {@code du} commands that cannot tell whether another command already
+     * counted a file. The total can therefore exceed the space actually used.
+     * <p>
+     * Requires command {@code du} and {@code stat}.
+     *
+     * @param executor the executor used to deliver the results.
+     *                 Pass {@code null} to deliver them on the thread running the commands.
+     * @param callback the callback to receive the results.
+     */
+    public void diskUsage(@Nullable Executor executor, @NonNull DiskUsageCallback callback) {
+        // Follow-up commands are submitted from a worker thread, not the one reading the output
+        newJob(DU_LIST_CMD).to(new ArrayList<>(), null).submit(Shell.EXECUTOR, res -> {
+            if (!res.isSuccess()) {
+                post(executor, () -> callback.onComplete(-1));
+                return;
+            }
+            List<String> dirs = new ArrayList<>();
+            long files = 0;
+            for (String line : res.getOut()) {
+                if (!line.startsWith("/")) {
+                    dirs.add(line);
+                    continue;
+                }
+                long usage = parseUsage(line.substring(1));
+                if (usage < 0) {
+                    post(executor, () -> callback.onComplete(-1));
+                    return;
+                }
+                files += usage;
+            }
+            long self = files;
+            post(executor, () -> callback.onUsage(this, self));
+            if (dirs.isEmpty()) {
+                post(executor, () -> callback.onComplete(self));
+                return;
+            }
+            AtomicInteger remaining = new AtomicInteger(dirs.size());
+            AtomicLong total = new AtomicLong(files);
+            AtomicBoolean failed = new AtomicBoolean();
+            for (String name : dirs) {
+                SuFile dir = child(name);
+                newJob("du -skl \"$__F_\"/" + ShellUtils.escapedString(name) + " 2>/dev/null")
+                        .to(new ArrayList<>(), null).submit(null, r -> {
+                    List<String> out = r.getOut();
+                    long usage = out.isEmpty() ? -1 : parseUsage(out.get(out.size() - 1));
+                    long sum;
+                    if (usage < 0) {
+                        failed.set(true);
+                        sum = total.get();
+                    } else {
+                        sum = total.addAndGet(usage);
+                        post(executor, () -> callback.onUsage(dir, usage));
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        long result = failed.get() ? -1 : sum;
+                        post(executor, () -> callback.onComplete(result));
+                    }
+                });
+            }
+        });
+    }
+
+    // Parse "KB\tPATH" of du, -1 if there is no number
+    private static long parseUsage(String line) {
+        int tab = line.indexOf('\t');
+        try {
+            return Long.parseLong(tab < 0 ? line.trim() : line.substring(0, tab)) * 1024;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void post(Executor executor, Runnable r) {
+        if (executor == null)
+            r.run();
+        else
+            executor.execute(r);
+    }
+
+    /**
+     * Walk the file tree rooted at this abstract pathname.
+     *
+     * @see #walk(int, String...)
+     */
+    @NonNull
+    public SuFileIterator walk() {
+        return walk(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Walk the file tree rooted at this abstract pathname.
+     * <p>
+     * The whole tree is traversed by a single {@code find} command, and entries are returned
+     * as soon as they are found, depth first, without this file itself. The predicates are
+     * passed to {@code find} as its expression, so filtering happens in the shell, e.g.
+     * {@code walk(3, "-type", "f", "-name", "*.log")}. Each argument is quoted separately.
+     * Paths are read as NUL terminated records, so names containing any character, e.g.
+     * newlines or carriage returns, are returned correctly.
+     * <p>
+     * The command runs in the background like {@link Shell.Job#stream()}, on a spare shell
+     * that is busy until the returned iterator is consumed or closed; querying the returned
+     * files meanwhile does not wait for it.
+     * <p>
+     * Requires command {@code find}.
+     *
+     * @param maxDepth   the maximum levels of directories to descend; 1 only returns the direct
+     *                   children.
+     * @param predicates the expression of {@code find} selecting the returned entries.
+     * @return an iterator of the entries; always close the iterator when done.
+     */
+    @NonNull
+    public SuFileIterator walk(int maxDepth, String... predicates) {
+        StringBuilder sb = new StringBuilder("find \"$__F_\" -mindepth 1");
+        if (maxDepth < Integer.MAX_VALUE)
+            sb.append(" -maxdepth ").append(Math.max(maxDepth, 0));
+        if (predicates.length > 0) {
+            sb.append(" \\(");
+            for (String p : predicates)
+                sb.append(' ').append(ShellUtils.escapedString(p));
+            sb.append(" \\)");
+        }
+        sb.append(" -print0 2>/dev/null");
+        return new SuFileIterator(MainShell.streamRecords(newJob(sb.toString())),
+                getAbsolutePath());
+    }
+
+    /**
+     * Watch the direct children of the directory denoted by this abstract pathname.
+     * Events are delivered on the main thread.
+     *
+     * @see #watch(Executor, SuFileWatcher.Callback)
+     */
+    @NonNull
+    public SuFileWatcher watch(@NonNull SuFileWatcher.Callback callback) {
+        return watch(UiThreadHandler.executor, callback);
+    }
+
+    /**
+     * Watch the direct children of the directory denoted by this abstract pathname for
+     * creation, modification and deletion, without polling from the application.
+     * <p>
+     * A new shell is created for the watcher, so this method should not be called on the
+     * main thread.
+     * <p>
+     * Requires command {@code inotifyd}, or {@code stat} and {@code sleep}.
+     *
+     * @param executor the executor used to deliver the events.
+     *                 Pass {@code null} to deliver them on the thread reading the shell.
+     * @param callback the callback to receive the events.
+     * @return the watcher; always close it when done.
+     * @throws com.superuser.NoShellException the shell cannot be created.
+     */
+    @NonNull
+    public SuFileWatcher watch(@Nullable Executor executor,
+                               @NonNull SuFileWatcher.Callback callback) {
+        return new SuFileWatcher(this, executor, callback);
+    }
+
+    /**
+     * The callback to receive the progress of {@link #archive(OutputStream, ProgressCallback)}
+     * and {@link #extract(InputStream, ProgressCallback)}.
+     */
+    public interface ProgressCallback {
+        /**
+         * @param bytes the number of bytes of the archive transferred so far.
+         */
+        void onProgress(long bytes);
+    }
+
+    /**
+     * The callback to receive the results of {@link #diskUsage(Executor, DiskUsageCallback)}.
+     */
+    public interface DiskUsageCallback {
+        /**
+         * Called once for each subdirectory, and once with the directory itself for the
+         * total of the other entries directly in it. Subdirectories whose usage cannot be
+         * computed are not reported.
+         *
+         * @param file  the subdirectory, or the directory itself.
+         * @param bytes the disk usage in bytes.
+         */
+        void onUsage(@NonNull SuFile file, long bytes);
+
+        /**
+         * Called after all subdirectories are reported.
+         *
+         * @param bytes the total disk usage in bytes, or -1 if the file is not a directory or
+         *              the usage of some entries cannot be computed, e.g. no shell is
+         *              available or {@code du} failed to run.
+         */
+        void onComplete(long bytes);
+    }
 }
@@ -0,0 +1,277 @@
+package java.io;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * A snapshot of the attributes of a {@link SuFile}, read with a single {@code stat} call.
+ * <p>
+ * Type, length and last modified time follow symbolic links like {@link File} does;
+ * {@link #isSymlink()} and {@link #getLinkTarget()} describe the link itself.
+ * Ownership and mode belong to the link itself as well.
+ */
+public final class SuFileAttributes {
+
+    static final int S_IFMT = 0170000;
+    static final int S_IFSOCK = 0140000;
+    static final int S_IFLNK = 0120000;
+    static final int S_IFREG = 0100000;
+    static final int S_IFBLK = 0060000;
+    static final int S_IFDIR = 0040000;
+    static final int S_IFCHR = 0020000;
+    static final int S_IFIFO = 0010000;
+
+    // Fields of a stat line, see STAT_FMT
+    static final String STAT_FMT = "%f %s %Y %u %g %U %G";
+
+    // Sets __A_ to the access of the shell to $__F_, e.g. "-rw"
+    static final String ACCESS_CMD = accessCmd("__F_");
+
+    /**
+     * @return a command setting {@code __A_} to the access of the shell to the path in the
+     * shell variable {@code var}, e.g. {@code -rw}.
+     */
+    static String accessCmd(String var) {
+        return "__A_=-;" +
+                "[ -r \"$" + var + "\" ]&&__A_=${__A_}r;" +
+                "[ -w \"$" + var + "\" ]&&__A_=${__A_}w;" +
+                "[ -x \"$" + var + "\" ]&&__A_=${__A_}x";
+    }
+
+    /**
+     * Prints the attributes of the path in {@code $__F_}. The output is a line of
+     * {@code STAT_FMT ACCESS} of the path itself; for symbolic links, it is followed by a line
+     * of {@code STAT_FMT} of the target ({@code -} if the target does not exist) and a line of
+     * the link target.
+     */
+    static final String STAT_CMD = ACCESS_CMD + ";" +
+            "stat -c \"" + STAT_FMT + " $__A_\" \"$__F_\"&&[ -L \"$__F_\" ]&&" +
+            "{ stat -Lc '" + STAT_FMT + "' \"$__F_\"||echo -;readlink \"$__F_\"; };unset __A_";
+
+    static final SuFileAttributes NONEXISTENT = new SuFileAttributes();
+
+    private final boolean exists;
+    private final int lmode;
+    private final int mode;
+    private final long length;
+    private final long lastModified;
+    private final int uid;
+    private final int gid;
+    private final String owner;
+    private final String group;
+    private final String targetOwner;
+    private final String targetGroup;
+    private final String linkTarget;
+    private final String access;
+
+    private SuFileAttributes() {
+        exists = false;
+        lmode = 0;
+        mode = 0;
+        length = 0L;
+        lastModified = 0L;
+        uid = -1;
+        gid = -1;
+        owner = null;
+        group = null;
+        targetOwner = null;
+        targetGroup = null;
+        linkTarget = null;
+        access = "";
+    }
+
+    /**
+     * @param stat       the fields of {@link #STAT_FMT} of the file itself.
+     * @param access     the access of the shell to the file, e.g. {@code -rw}.
+     * @param target     the fields of {@link #STAT_FMT} of the link target, {@code null} if
+     *                   the file is not a symbolic link or the target does not exist.
+     * @param linkTarget the path the symbolic link points to.
+     * @throws NumberFormatException the fields are invalid.
+     */
+    SuFileAttributes(String[] stat, String access, String[] target, String linkTarget) {
+        this.access = access;
+        lmode = Integer.parseInt(stat[0], 16);
+        uid = Integer.parseInt(stat[3]);
+        gid = Integer.parseInt(stat[4]);
+        owner = stat[5];
+        group = stat[6];
+        this.linkTarget = linkTarget;
+        if (target == null) {
+            // Not a symbolic link, or a dangling one
+            exists = (lmode & S_IFMT) != S_IFLNK;
+            mode = lmode;
+            length = exists ? Long.parseLong(stat[1]) : 0L;
+            lastModified = exists ? Long.parseLong(stat[2]) * 1000 : 0L;
+            targetOwner = owner;
+            targetGroup = group;
+        } else {
+            exists = true;
+            mode = Integer.parseInt(target[0], 16);
+            length = Long.parseLong(target[1]);
+            lastModified = Long.parseLong(target[2]) * 1000;
+            targetOwner = target[5];
+            targetGroup = target[6];
+        }
+    }
+
+    /**
+     * Parse the outputs of {@link #STAT_CMD} starting at {@code index}.
+     *
+     * @return the attributes, or {@link #NONEXISTENT} if the output is not a valid stat line.
+     */
+    @NonNull
+    static SuFileAttributes parse(List<String> out, int index) {
+        if (out.size() <= index)
+            return NONEXISTENT;
+        String[] stat = out.get(index).split(" ", 8);
+        if (stat.length != 8)
+            return NONEXISTENT;
+        try {
+            if ((Integer.parseInt(stat[0], 16) & S_IFMT) != S_IFLNK || out.size() < index + 3)
+                return new SuFileAttributes(stat, stat[7], null, null);
+            String[] target = out.get(index + 1).split(" ", 7);
+            return new SuFileAttributes(stat, stat[7], target.length == 7 ? target : null,
+                    out.get(index + 2));
+        } catch (NumberFormatException e) {
+            return NONEXISTENT;
+        }
+    }
+
+    public boolean exists() {
+        return exists;
+    }
+
+    public boolean isDirectory() {
+        return exists && (mode & S_IFMT) == S_IFDIR;
+    }
+
+    public boolean isFile() {
+        return exists && (mode & S_IFMT) == S_IFREG;
+    }
+
+    public boolean isBlock() {
+        return exists && (mode & S_IFMT) == S_IFBLK;
+    }
+
+    public boolean isCharacter() {
+        return exists && (mode & S_IFMT) == S_IFCHR;
+    }
+
+    public boolean isNamedPipe() {
+        return exists && (mode & S_IFMT) == S_IFIFO;
+    }
+
+    public boolean isSocket() {
+        return exists && (mode & S_IFMT) == S_IFSOCK;
+    }
+
+    public boolean isSymlink() {
+        return (lmode & S_IFMT) == S_IFLNK;
+    }
+
+    /**
+     * @return the target of the symbolic link, {@code null} if the file is not a symbolic link.
+     */
+    @Nullable
+    public String getLinkTarget() {
+        return linkTarget;
+    }
+
+    /**
+     * @return the length of the file in bytes, 0 if the file does not exist.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return the last modified time in milliseconds since the epoch, 0 if the file
+     * does not exist.
+     */
+    public long lastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return the permission bits of the file, e.g. {@code 0755}.
+     */
+    public int getPermissions() {
+        return lmode & 07777;
+    }
+
+    /**
+     * @return the raw {@code st_mode} of the file, including the file type.
+     */
+    public int getMode() {
+        return lmode;
+    }
+
+    /**
+     * @return the {@code st_mode} of the target of symbolic links, same as
+     * {@link #getMode()} otherwise.
+     */
+    int getTargetMode() {
+        return mode;
+    }
+
+    /**
+     * @return the user ID of the owner, -1 if the file does not exist.
+     */
+    public int getUid() {
+        return uid;
+    }
+
+    /**
+     * @return the group ID of the owner, -1 if the file does not exist.
+     */
+    public int getGid() {
+        return gid;
+    }
+
+    @Nullable
+    public String getOwner() {
+        return owner;
+    }
+
+    @Nullable
+    public String getGroup() {
+        return group;
+    }
+
+    /**
+     * @return the owner of the target of symbolic links, same as {@link #getOwner()} otherwise.
+     */
+    String getTargetOwner() {
+        return targetOwner;
+    }
+
+    /**
+     * @return the group of the target of symbolic links, same as {@link #getGroup()} otherwise.
+     */
+    String getTargetGroup() {
+        return targetGroup;
+    }
+
+    /**
+     * @return whether the shell can read the file.
+     */
+    public boolean canRead() {
+        return access.indexOf('r') >= 0;
+    }
+
+    /**
+     * @return whether the shell can write the file.
+     */
+    public boolean canWrite() {
+        return access.indexOf('w') >= 0;
+    }
+
+    /**
+     * @return whether the shell can execute the file.
+     */
+    public boolean canExecute() {
+        return access.indexOf('x') >= 0;
+    }
+}
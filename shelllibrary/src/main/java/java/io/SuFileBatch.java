@@ -0,0 +1,168 @@
+package java.io;
+
+import androidx.annotation.NonNull;
+
+import com.superuser.Shell;
+import com.superuser.ShellUtils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A batch of file operations executed together in the main shell.
+ * <p>
+ * Unlike calling the methods of {@link SuFile} one by one, operations in a batch are not
+ * tried with {@link File} first, and are sent to the shell as a few large scripts instead of
+ * one command per operation. Operations run in the order they are added; a failed operation
+ * does not stop the following ones.
+ * <p>
+ * Scripts are split by their length rather than by the number of operations, so batches of
+ * long paths are sent in more, smaller writes.
+ * <pre>
+ * BitSet ok = new SuFileBatch()
+ *         .mkdirs(dir)
+ *         .copy(src, new File(dir, "a"))
+ *         .setChmod(new File(dir, "a"), 644)
+ *         .exec();
+ * </pre>
+ */
+public class SuFileBatch {
+
+    // Scripts are split when longer than this many characters
+    private static final int MAX_SCRIPT = 32 * 1024;
+
+    // Appends the status of the previous command to __R_
+    private static final String STATUS_FN = "__r_(){ [ $? = 0 ]&&__R_=${__R_}1||__R_=${__R_}0;};";
+
+    private final List<String> ops = new ArrayList<>();
+    private final List<SuFile> files = new ArrayList<>();
+
+    /**
+     * Create an empty batch.
+     */
+    public SuFileBatch() {
+    }
+
+    private SuFileBatch add(String cmd, File... files) {
+        ops.add(cmd);
+        for (File f : files) {
+            if (f instanceof SuFile)
+                this.files.add((SuFile) f);
+        }
+        return this;
+    }
+
+    private static String path(File f) {
+        return ShellUtils.escapedString(f.getAbsolutePath());
+    }
+
+    /**
+     * Delete a file or an empty directory.
+     * <p>
+     * Requires command {@code rm}, or {@code rmdir} for directories.
+     */
+    @NonNull
+    public SuFileBatch delete(@NonNull File file) {
+        String p = path(file);
+        // Fails if the file does not exist, like File.delete()
+        return add("{ [ -L " + p + " ]||[ -e " + p + " ]; }&&{ rm -f " + p + "||rmdir " + p + "; }",
+                file);
+    }
+
+    /**
+     * Delete a file or a directory with all of its content.
+     * <p>
+     * Requires command {@code rm}.
+     */
+    @NonNull
+    public SuFileBatch deleteRecursive(@NonNull File file) {
+        return add("rm -rf " + path(file), file);
+    }
+
+    /**
+     * Create a directory and any necessary parent directories.
+     * <p>
+     * Requires command {@code mkdir}.
+     */
+    @NonNull
+    public SuFileBatch mkdirs(@NonNull File dir) {
+        return add("mkdir -p " + path(dir), dir);
+    }
+
+    /**
+     * Move a file, replacing {@code dest} if it exists.
+     * <p>
+     * Requires command {@code mv}.
+     */
+    @NonNull
+    public SuFileBatch renameTo(@NonNull File src, @NonNull File dest) {
+        return add("mv -f " + path(src) + " " + path(dest), src, dest);
+    }
+
+    /**
+     * Copy a file, replacing {@code dest} if it exists.
+     * <p>
+     * Requires command {@code cp}.
+     */
+    @NonNull
+    public SuFileBatch copy(@NonNull File src, @NonNull File dest) {
+        return add("cp -f " + path(src) + " " + path(dest), dest);
+    }
+
+    /**
+     * Change the mode of a file, in the same format as {@link SuFile#setChmod(int)}.
+     * <p>
+     * Requires command {@code chmod}.
+     */
+    @NonNull
+    public SuFileBatch setChmod(@NonNull File file, int chmod) {
+        return add("chmod " + chmod + " " + path(file), file);
+    }
+
+    /**
+     * @return the number of operations in the batch.
+     */
+    public int size() {
+        return ops.size();
+    }
+
+    /**
+     * Execute all operations in the main shell and wait for them to finish.
+     * The cached attributes of all {@link SuFile}s passed to the batch are discarded.
+     *
+     * @return a bitmap where bit {@code i} is set if the {@code i}th operation succeeded.
+     */
+    @NonNull
+    public BitSet exec() {
+        BitSet result = new BitSet(ops.size());
+        Shell shell = Shell.getShell();
+        StringBuilder sb = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < ops.size(); ++i) {
+            sb.append(ops.get(i)).append(";__r_;");
+            if (sb.length() >= MAX_SCRIPT || i == ops.size() - 1) {
+                run(shell, sb.toString(), start, result);
+                sb.setLength(0);
+                start = i + 1;
+            }
+        }
+        for (SuFile f : files)
+            f.modified(true);
+        return result;
+    }
+
+    private static void run(Shell shell, String script, int start, BitSet result) {
+        // Only the statuses are printed, everything else the operations output is dropped
+        List<String> out = shell.newJob().add(STATUS_FN + "__R_=;{ " + script +
+                "} >/dev/null 2>&1;echo \"$__R_\";unset __R_;unset -f __r_")
+                .to(new ArrayList<>(), null).exec().getOut();
+        if (out.isEmpty())
+            return;
+        String status = out.get(out.size() - 1);
+        for (int i = 0; i < status.length(); ++i) {
+            if (status.charAt(i) == '1')
+                result.set(start + i);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package java.io;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A read-only {@link SeekableByteChannel} for random access to the content of a
+ * {@link SuFile}, e.g. to parse the header and index of a large database or archive
+ * without reading the whole file.
+ * <p>
+ * Content is read from the shell in pages of {@link #PAGE_SIZE} bytes with {@code dd},
+ * through a FIFO in the cache directory of the application, and recently used pages
+ * are kept in an LRU cache. When pages are read sequentially, each read from the shell
+ * fetches twice as many pages as the previous one, up to 1MB or the size of the cache.
+ * <p>
+ * The size of the file is read once when the channel is opened; the file should not be
+ * modified while the channel is open.
+ * <p>
+ * Requires command {@code mkfifo} and {@code dd} if the file is accessed with the shell.
+ */
+@RequiresApi(Build.VERSION_CODES.N)
+public final class SuFileChannel implements SeekableByteChannel {
+
+    public static final int PAGE_SIZE = 16 * 1024;
+
+    private static final int DEFAULT_CACHE_PAGES = 64;
+    private static final int MAX_READ_AHEAD = 64;
+
+    private final ShellFifo fifo;
+    private final long size;
+    private final LinkedHashMap<Long, byte[]> cache;
+    private final int maxReadAhead;
+    private long position = 0;
+    private long nextPage = -1;
+    private int readAhead = 1;
+    private boolean open = true;
+
+    /**
+     * Open a channel with a cache of 1MB.
+     *
+     * @see #open(File, int)
+     */
+    @NonNull
+    public static SeekableByteChannel open(@NonNull File file) throws IOException {
+        return open(file, DEFAULT_CACHE_PAGES);
+    }
+
+    /**
+     * Open a read-only channel of a file.
+     * <p>
+     * If the file can be read without root, a {@link java.nio.channels.FileChannel} of the
+     * file is returned directly, which can also be used to memory-map the file.
+     *
+     * @param cachePages the number of pages kept in the cache.
+     * @throws FileNotFoundException the file does not exist or is a directory.
+     */
+    @NonNull
+    public static SeekableByteChannel open(@NonNull File file, int cachePages) throws IOException {
+        SuFile f = file instanceof SuFile ? (SuFile) file : new SuFile(file);
+        if (f.canNoRoot()) {
+            try {
+                return new RandomAccessFile(f.getPath(), "r").getChannel();
+            } catch (FileNotFoundException ignored) {
+                // Fallback to the shell
+            }
+        }
+        return new SuFileChannel(f, cachePages);
+    }
+
+    private SuFileChannel(SuFile file, int cachePages) throws IOException {
+        SuFileAttributes attrs = file.refresh();
+        if (!attrs.exists() || attrs.isDirectory())
+            throw new FileNotFoundException("Cannot open " + file.getPath());
+        size = attrs.length();
+        int max = Math.max(cachePages, 1);
+        maxReadAhead = Math.min(MAX_READ_AHEAD, max);
+        cache = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > max;
+            }
+        };
+        fifo = new ShellFifo(file, false);
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open)
+            throw new ClosedChannelException();
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        int total = 0;
+        while (dst.hasRemaining() && position < size) {
+            byte[] page = getPage(position / PAGE_SIZE);
+            int off = (int) (position % PAGE_SIZE);
+            if (off >= page.length)
+                break;
+            int n = Math.min(dst.remaining(), page.length - off);
+            dst.put(page, off, n);
+            position += n;
+            total += n;
+        }
+        return total == 0 && dst.hasRemaining() ? -1 : total;
+    }
+
+    private byte[] getPage(long index) throws IOException {
+        byte[] page = cache.get(index);
+        if (page != null)
+            return page;
+        // Double the read-ahead for sequential reads, reset it otherwise
+        // Never fetch more pages than the cache holds, or the requested page is evicted
+        readAhead = index == nextPage ? Math.min(readAhead * 2, maxReadAhead) : 1;
+        long last = (size - 1) / PAGE_SIZE;
+        int count = (int) Math.min(readAhead, last - index + 1);
+        page = fetch(index, count);
+        nextPage = index + count;
+        return page;
+    }
+
+    /**
+     * Read {@code count} pages into the cache, and return the first one.
+     */
+    private byte[] fetch(long index, int count) throws IOException {
+        byte[] first = new byte[0];
+        fifo.run("dd if=\"$__F_\" bs=" + PAGE_SIZE + " skip=" + index +
+                " count=" + count + " 2>/dev/null>%s");
+        FileInputStream in = fifo.openInput();
+        try {
+            for (int i = 0; i < count; ++i) {
+                byte[] page = new byte[PAGE_SIZE];
+                int len = 0, n;
+                while (len < PAGE_SIZE && (n = in.read(page, len, PAGE_SIZE - len)) > 0)
+                    len += n;
+                if (len == 0)
+                    break;
+                if (len < PAGE_SIZE) {
+                    byte[] b = new byte[len];
+                    System.arraycopy(page, 0, b, 0, len);
+                    page = b;
+                }
+                if (i == 0)
+                    first = page;
+                cache.put(index + i, page);
+                if (len < PAGE_SIZE)
+                    break;
+            }
+        } finally {
+            // Keep our end open until the command is done so it never blocks on the FIFO
+            try {
+                fifo.await();
+            } finally {
+                in.close();
+            }
+        }
+        return first;
+    }
+
+    /**
+     * @throws NonWritableChannelException always, the channel is read-only.
+     */
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        if (newPosition < 0)
+            throw new IllegalArgumentException();
+        ensureOpen();
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    /**
+     * @throws NonWritableChannelException always, the channel is read-only.
+     */
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!open)
+            return;
+        open = false;
+        cache.clear();
+        fifo.delete();
+    }
+}
@@ -0,0 +1,82 @@
+package java.io;
+
+import androidx.annotation.NonNull;
+
+/**
+ * An {@link InputStream} reading the content of a {@link SuFile}.
+ * <p>
+ * If the file can be read without root, it is opened directly with a
+ * {@link FileInputStream}. Otherwise, {@code cat} running in the shell writes the content
+ * into a FIFO in the cache directory of the application, which is read as raw bytes.
+ * Closing the stream early stops the command. Errors of the command, e.g. the file
+ * does not exist, are reported with an {@link IOException} when reading reaches the
+ * end of the stream.
+ * <p>
+ * Requires command {@code mkfifo} and {@code cat} if the file is accessed with the shell.
+ */
+public class SuFileInputStream extends FilterInputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public SuFileInputStream(@NonNull String path) throws FileNotFoundException {
+        this(new SuFile(path));
+    }
+
+    public SuFileInputStream(@NonNull File file) throws FileNotFoundException {
+        super(open(file instanceof SuFile ? (SuFile) file : new SuFile(file)));
+    }
+
+    private static InputStream open(SuFile file) throws FileNotFoundException {
+        if (file.canNoRoot()) {
+            try {
+                return new BufferedInputStream(new FileInputStream(file.getPath()), BUFFER_SIZE);
+            } catch (FileNotFoundException ignored) {
+                // Fallback to the shell
+            }
+        }
+        return new BufferedInputStream(new FifoInputStream(file), BUFFER_SIZE);
+    }
+
+    private static class FifoInputStream extends InputStream {
+
+        private final ShellFifo fifo;
+        private final FileInputStream in;
+        private boolean eof = false;
+
+        FifoInputStream(SuFile file) throws FileNotFoundException {
+            fifo = new ShellFifo(file, false);
+            fifo.run("cat \"$__F_\">%s");
+            in = fifo.openInput();
+        }
+
+        private int check(int n) throws IOException {
+            if (n < 0 && !eof) {
+                eof = true;
+                fifo.await();
+            }
+            return n;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return check(in.read());
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            return check(in.read(b, off, len));
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // If the command is still running, it is stopped with SIGPIPE
+            in.close();
+            fifo.delete();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package java.io;
+
+import androidx.annotation.NonNull;
+
+import com.superuser.Shell;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A lazy iterator of {@link SuFile}s produced by a shell command, e.g. {@link SuFile#walk()}
+ * or {@link SuFile#openDirectory(FilenameFilter)}.
+ * <p>
+ * Entries are read from the shell only as fast as they are consumed, so iterating huge
+ * directory trees takes constant memory. The iterator can only be used once; always close it
+ * when done, which stops the command if it is still running.
+ */
+public final class SuFileIterator implements Iterator<SuFile>, Iterable<SuFile>, Closeable {
+
+    private final Shell.LineStream records;
+    private final String prefix;
+    private final SuFile parent;
+    private final FilenameFilter filter;
+    private SuFile next;
+
+    /**
+     * @param records NUL terminated absolute paths of the entries under {@code root}.
+     */
+    SuFileIterator(Shell.LineStream records, String root) {
+        this.records = records;
+        prefix = root.endsWith("/") ? root : root + "/";
+        parent = null;
+        filter = null;
+    }
+
+    /**
+     * @param records NUL terminated names of the children of {@code parent}, each prefixed
+     *                with {@code ./}.
+     * @param filter  the filter of the names, {@code null} to accept all.
+     */
+    SuFileIterator(Shell.LineStream records, SuFile parent, FilenameFilter filter) {
+        this.records = records;
+        prefix = "./";
+        this.parent = parent;
+        this.filter = filter;
+    }
+
+    /**
+     * @return this iterator, so it can be used in a for-each loop.
+     */
+    @NonNull
+    @Override
+    public Iterator<SuFile> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && records.hasNext()) {
+            String record = records.next();
+            // Skip anything that is not a full entry
+            if (!record.startsWith(prefix) || record.length() == prefix.length())
+                continue;
+            if (parent == null) {
+                next = new SuFile(record);
+            } else {
+                String name = record.substring(prefix.length());
+                if (name.indexOf('/') < 0 && (filter == null || filter.accept(parent, name)))
+                    next = parent.child(name);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public SuFile next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        SuFile f = next;
+        next = null;
+        return f;
+    }
+
+    @Override
+    public void close() {
+        records.close();
+    }
+}
@@ -0,0 +1,103 @@
+package java.io;
+
+import androidx.annotation.NonNull;
+
+/**
+ * An {@link OutputStream} writing the content of a {@link SuFile}.
+ * <p>
+ * If the file can be written without root, it is opened directly with a
+ * {@link FileOutputStream}. Otherwise, a FIFO is created in the cache directory of the
+ * application, and {@code cat} running in the shell copies everything written to the FIFO
+ * into the file. {@link #close()} waits for the copy to finish, and throws an
+ * {@link IOException} if the file could not be written.
+ * <p>
+ * Requires command {@code mkfifo} and {@code cat} if the file is accessed with the shell.
+ */
+public class SuFileOutputStream extends FilterOutputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public SuFileOutputStream(@NonNull String path) throws FileNotFoundException {
+        this(new SuFile(path), false);
+    }
+
+    public SuFileOutputStream(@NonNull String path, boolean append) throws FileNotFoundException {
+        this(new SuFile(path), append);
+    }
+
+    public SuFileOutputStream(@NonNull File file) throws FileNotFoundException {
+        this(file, false);
+    }
+
+    public SuFileOutputStream(@NonNull File file, boolean append) throws FileNotFoundException {
+        super(open(file instanceof SuFile ? (SuFile) file : new SuFile(file), append));
+    }
+
+    private static OutputStream open(SuFile file, boolean append) throws FileNotFoundException {
+        if (file.canNoRoot()) {
+            try {
+                return new BufferedOutputStream(
+                        new FileOutputStream(file.getPath(), append), BUFFER_SIZE);
+            } catch (FileNotFoundException ignored) {
+                // Fallback to the shell
+            }
+        }
+        return new BufferedOutputStream(new FifoOutputStream(file, append), BUFFER_SIZE);
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+    }
+
+    private static class FifoOutputStream extends OutputStream {
+
+        private final SuFile file;
+        private final ShellFifo fifo;
+        private final FileOutputStream out;
+        private boolean closed = false;
+
+        FifoOutputStream(SuFile file, boolean append) throws FileNotFoundException {
+            this.file = file;
+            fifo = new ShellFifo(file, true);
+            fifo.run("cat %s" + (append ? ">>" : ">") + "\"$__F_\"");
+            out = fifo.openOutput();
+            if (fifo.failed()) {
+                close0();
+                throw new FileNotFoundException("Cannot open " + file.getPath());
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        private void close0() {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+            fifo.delete();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            close0();
+            try {
+                fifo.await();
+            } finally {
+                // The size and times cached before writing are outdated
+                file.modified(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package java.io;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The single {@link FileSystem} of {@link SuFileSystemProvider}.
+ */
+@RequiresApi(Build.VERSION_CODES.O)
+final class SuFileSystem extends FileSystem {
+
+    private final SuFileSystemProvider provider;
+
+    SuFileSystem(SuFileSystemProvider provider) {
+        this.provider = provider;
+    }
+
+    @Override
+    public FileSystemProvider provider() {
+        return provider;
+    }
+
+    /**
+     * @throws IOException always, the file system is always open.
+     */
+    @Override
+    public void close() throws IOException {
+        throw new IOException("The root file system cannot be closed");
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    @Override
+    public String getSeparator() {
+        return "/";
+    }
+
+    @Override
+    public Iterable<Path> getRootDirectories() {
+        return Collections.singletonList(getPath("/"));
+    }
+
+    @Override
+    public Iterable<FileStore> getFileStores() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Set<String> supportedFileAttributeViews() {
+        return new HashSet<>(Arrays.asList("basic", "owner", "posix"));
+    }
+
+    @NonNull
+    @Override
+    public Path getPath(@NonNull String first, @NonNull String... more) {
+        return new SuPath(this, Paths.get(first, more));
+    }
+
+    /**
+     * Patterns are matched with the matcher of the default file system.
+     */
+    @Override
+    public PathMatcher getPathMatcher(String syntaxAndPattern) {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher(syntaxAndPattern);
+        return path -> matcher.matches(Paths.get(path.toString()));
+    }
+
+    /**
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @throws UnsupportedOperationException always, use {@link SuFile#watch(SuFileWatcher.Callback)}.
+     */
+    @Override
+    public WatchService newWatchService() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,828 @@
+package java.io;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import com.superuser.ShellUtils;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AccessMode;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileOwnerAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.UserPrincipal;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A {@link FileSystemProvider} of root paths, so that the {@code java.nio.file} APIs, e.g.
+ * {@link java.nio.file.Files#walk(Path, java.nio.file.FileVisitOption...)} or
+ * {@link java.nio.file.Files#copy(Path, Path, CopyOption...)}, work on files only accessible
+ * with the shell. All operations are built on {@link SuFile}:
+ * <ul>
+ *     <li>Attributes are read with {@link SuFile#getAttributes()} and cached per path.
+ *     A directory stream fetches the attributes of all entries together with the listing,
+ *     so reading the attributes of the entries, e.g. while walking a file tree, does not cost
+ *     extra shell calls until the cached attributes expire, see
+ *     {@link SuFile#setAttributeCacheTtl(long, java.util.concurrent.TimeUnit)}.</li>
+ *     <li>Byte channels opened for reading are {@link SuFileChannel}s; channels opened for
+ *     writing and output streams write sequentially with {@link SuFileOutputStream}.</li>
+ *     <li>{@code basic}, {@code owner} and {@code posix} attribute views are supported.</li>
+ * </ul>
+ * The limits of the file system are reported with checked exceptions:
+ * <ul>
+ *     <li>Byte channels cannot be opened for both reading and writing, and an existing file
+ *     can only be opened for writing if it is truncated or appended to; a
+ *     {@link FileSystemException} is thrown otherwise.</li>
+ *     <li>Only the last modified time can be set. When the file is only accessible with the
+ *     shell, it is set with {@code touch -t}, which has a precision of a minute.</li>
+ *     <li>File stores are not available, {@link #getFileStore(Path)} throws a
+ *     {@link FileSystemException}.</li>
+ *     <li>The file system cannot be closed, {@link FileSystem#close()} throws an
+ *     {@link IOException}.</li>
+ * </ul>
+ * Get paths with {@link #get(String, String...)}. The URI scheme of the paths is
+ * {@value #SCHEME}; the provider is not installed, so convert URIs with
+ * {@link #getPath(URI)} instead of {@link java.nio.file.Paths#get(URI)}.
+ */
+@RequiresApi(Build.VERSION_CODES.O)
+public final class SuFileSystemProvider extends FileSystemProvider {
+
+    public static final String SCHEME = "su";
+
+    private static final SuFileSystemProvider INSTANCE = new SuFileSystemProvider();
+
+    private static final List<String> BASIC_ATTRS = Arrays.asList("lastModifiedTime",
+            "lastAccessTime", "creationTime", "size", "isRegularFile", "isDirectory",
+            "isSymbolicLink", "isOther", "fileKey");
+    private static final List<String> OWNER_ATTRS = Collections.singletonList("owner");
+    private static final List<String> POSIX_ATTRS = Arrays.asList("permissions", "owner",
+            "group");
+
+    private final SuFileSystem fs = new SuFileSystem(this);
+
+    private SuFileSystemProvider() {
+    }
+
+    /**
+     * @return the file system of root paths.
+     */
+    @NonNull
+    public static FileSystem getRootFileSystem() {
+        return INSTANCE.fs;
+    }
+
+    /**
+     * Converts a path string, or a sequence of strings joined to form a path string,
+     * to a root path, like {@link java.nio.file.Paths#get(String, String...)}.
+     */
+    @NonNull
+    public static Path get(@NonNull String first, @NonNull String... more) {
+        return INSTANCE.fs.getPath(first, more);
+    }
+
+    private static SuPath toSuPath(Path path) {
+        if (!(path instanceof SuPath))
+            throw new ProviderMismatchException();
+        return (SuPath) path;
+    }
+
+    private static SuFile file(Path path) {
+        return toSuPath(path).getFile();
+    }
+
+    private static boolean follow(LinkOption... options) {
+        for (LinkOption o : options) {
+            if (o == LinkOption.NOFOLLOW_LINKS)
+                return false;
+        }
+        return true;
+    }
+
+    private static SuFileAttributes attributes(Path path, boolean follow, boolean fresh)
+            throws NoSuchFileException {
+        SuFile f = file(path);
+        SuFileAttributes a = fresh ? f.refresh() : f.getAttributes();
+        if (!a.exists() && !(!follow && a.isSymlink()))
+            throw new NoSuchFileException(path.toString());
+        return a;
+    }
+
+    private static void exec(SuFile file, Path path, String cmd) throws IOException {
+        boolean ok = file.newJob(cmd).exec().isSuccess();
+        file.modified(true);
+        if (!ok)
+            throw new FileSystemException(path.toString());
+    }
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    /**
+     * @throws FileSystemAlreadyExistsException always, there is only one file system.
+     */
+    @Override
+    public FileSystem newFileSystem(URI uri, Map<String, ?> env) {
+        throw new FileSystemAlreadyExistsException();
+    }
+
+    @Override
+    public FileSystem getFileSystem(URI uri) {
+        if (!SCHEME.equalsIgnoreCase(uri.getScheme()))
+            throw new IllegalArgumentException("URI scheme is not " + SCHEME);
+        return fs;
+    }
+
+    @NonNull
+    @Override
+    public Path getPath(@NonNull URI uri) {
+        return getFileSystem(uri).getPath(uri.getPath());
+    }
+
+    /**
+     * Channels can be opened either for reading or for writing. Writing channels only
+     * support sequential writes from the start of the file, or appending.
+     *
+     * @throws FileSystemException the channel is opened for both reading and writing.
+     */
+    @Override
+    public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options,
+                                              FileAttribute<?>... attrs) throws IOException {
+        if (options.contains(StandardOpenOption.WRITE) || options.contains(StandardOpenOption.APPEND)) {
+            if (options.contains(StandardOpenOption.READ))
+                throw new FileSystemException(path.toString(), null,
+                        "Cannot open for both reading and writing");
+            return new WriteChannel(openOutput(path, options, attrs));
+        }
+        if (attributes(path, true, false).isDirectory())
+            throw new FileSystemException(path.toString(), null, "Is a directory");
+        return SuFileChannel.open(file(path));
+    }
+
+    @Override
+    public InputStream newInputStream(Path path, OpenOption... options) throws IOException {
+        for (OpenOption o : options) {
+            if (o == StandardOpenOption.WRITE || o == StandardOpenOption.APPEND)
+                throw new IllegalArgumentException(o + " not allowed");
+        }
+        if (attributes(path, true, false).isDirectory())
+            throw new FileSystemException(path.toString(), null, "Is a directory");
+        return new SuFileInputStream(file(path));
+    }
+
+    @Override
+    public OutputStream newOutputStream(Path path, OpenOption... options) throws IOException {
+        Set<OpenOption> set = new HashSet<>();
+        if (options.length == 0) {
+            set.add(StandardOpenOption.CREATE);
+            set.add(StandardOpenOption.TRUNCATE_EXISTING);
+        } else {
+            Collections.addAll(set, options);
+        }
+        if (set.contains(StandardOpenOption.READ))
+            throw new IllegalArgumentException("READ not allowed");
+        return openOutput(path, set);
+    }
+
+    private static OutputStream openOutput(Path path, Set<? extends OpenOption> options,
+                                           FileAttribute<?>... attrs) throws IOException {
+        if (attrs.length > 0)
+            throw new UnsupportedOperationException("Initial file attributes");
+        SuFile f = file(path);
+        boolean append = options.contains(StandardOpenOption.APPEND);
+        SuFileAttributes a = f.refresh();
+        if (a.exists()) {
+            if (options.contains(StandardOpenOption.CREATE_NEW))
+                throw new FileAlreadyExistsException(path.toString());
+            if (a.isDirectory())
+                throw new FileSystemException(path.toString(), null, "Is a directory");
+            if (!append && !options.contains(StandardOpenOption.TRUNCATE_EXISTING))
+                throw new FileSystemException(path.toString(), null,
+                        "Cannot overwrite without truncating");
+        } else if (!options.contains(StandardOpenOption.CREATE) &&
+                !options.contains(StandardOpenOption.CREATE_NEW)) {
+            throw new NoSuchFileException(path.toString());
+        }
+        try {
+            return new SuFileOutputStream(f, append);
+        } finally {
+            f.modified(true);
+        }
+    }
+
+    /**
+     * The attributes of all entries are fetched together with the listing.
+     */
+    @Override
+    public DirectoryStream<Path> newDirectoryStream(Path dir, DirectoryStream.Filter<? super Path> filter)
+            throws IOException {
+        SuPath path = toSuPath(dir);
+        SuFile[] files = path.getFile().listWithAttributes(null, null);
+        if (files == null) {
+            attributes(dir, true, true);
+            throw new NotDirectoryException(dir.toString());
+        }
+        return new DirStream(files, filter);
+    }
+
+    @Override
+    public void createDirectory(Path dir, FileAttribute<?>... attrs) throws IOException {
+        if (attrs.length > 0)
+            throw new UnsupportedOperationException("Initial file attributes");
+        SuFile f = file(dir);
+        SuFileAttributes a = f.refresh();
+        if (a.exists() || a.isSymlink())
+            throw new FileAlreadyExistsException(dir.toString());
+        exec(f, dir, "mkdir \"$__F_\"");
+    }
+
+    @Override
+    public void delete(Path path) throws IOException {
+        SuFile f = file(path);
+        SuFileAttributes a = attributes(path, false, true);
+        if (a.isDirectory() && !a.isSymlink()) {
+            if (!f.newJob("rmdir \"$__F_\"").exec().isSuccess()) {
+                f.modified(true);
+                String[] names = f.list();
+                if (names != null && names.length > 0)
+                    throw new DirectoryNotEmptyException(path.toString());
+                throw new FileSystemException(path.toString());
+            }
+            f.modified(true);
+        } else {
+            exec(f, path, "rm -f \"$__F_\"");
+        }
+    }
+
+    /**
+     * Requires command {@code cp}, and {@code touch} to copy the attributes of directories.
+     */
+    @Override
+    public void copy(Path source, Path target, CopyOption... options) throws IOException {
+        boolean replace = false, copyAttrs = false, follow = true;
+        for (CopyOption o : options) {
+            if (o == StandardCopyOption.REPLACE_EXISTING)
+                replace = true;
+            else if (o == StandardCopyOption.COPY_ATTRIBUTES)
+                copyAttrs = true;
+            else if (o == LinkOption.NOFOLLOW_LINKS)
+                follow = false;
+        }
+        SuFile src = file(source);
+        SuFileAttributes a = attributes(source, follow, true);
+        if (isSameFile(source, target))
+            return;
+        prepareTarget(target, replace);
+        String dest = ShellUtils.escapedString(file(target).getAbsolutePath());
+        String cmd;
+        if (a.isDirectory() && (follow || !a.isSymlink())) {
+            // Like File.copy, the content of directories is not copied
+            cmd = "mkdir " + dest + (copyAttrs ? "&&touch -r \"$__F_\" " + dest : "");
+        } else {
+            cmd = "cp " + (copyAttrs ? "-p " : "") + (follow ? "-L " : "-P ") + "\"$__F_\" " + dest;
+        }
+        try {
+            exec(src, target, cmd);
+        } finally {
+            file(target).modified(true);
+        }
+    }
+
+    @Override
+    public void move(Path source, Path target, CopyOption... options) throws IOException {
+        boolean replace = false;
+        for (CopyOption o : options) {
+            if (o == StandardCopyOption.REPLACE_EXISTING)
+                replace = true;
+        }
+        SuFile src = file(source);
+        attributes(source, false, true);
+        if (isSameFile(source, target))
+            return;
+        prepareTarget(target, replace);
+        try {
+            exec(src, target, "mv -f \"$__F_\" " +
+                    ShellUtils.escapedString(file(target).getAbsolutePath()));
+        } finally {
+            file(target).modified(true);
+        }
+    }
+
+    private void prepareTarget(Path target, boolean replace) throws IOException {
+        SuFileAttributes t = file(target).refresh();
+        if (t.exists() || t.isSymlink()) {
+            if (!replace)
+                throw new FileAlreadyExistsException(target.toString());
+            delete(target);
+        }
+    }
+
+    @Override
+    public boolean isSameFile(Path path, Path path2) {
+        if (path.equals(path2))
+            return true;
+        if (!(path2 instanceof SuPath))
+            return false;
+        return file(path).getCanonicalPath().equals(file(path2).getCanonicalPath());
+    }
+
+    @Override
+    public boolean isHidden(Path path) {
+        Path name = path.getFileName();
+        return name != null && name.toString().startsWith(".");
+    }
+
+    /**
+     * @throws FileSystemException always, file stores are not available.
+     */
+    @Override
+    public FileStore getFileStore(Path path) throws IOException {
+        throw new FileSystemException(path.toString(), null, "File stores are not available");
+    }
+
+    @Override
+    public void checkAccess(Path path, AccessMode... modes) throws IOException {
+        SuFileAttributes a = attributes(path, true, false);
+        for (AccessMode m : modes) {
+            boolean ok;
+            switch (m) {
+                case READ:
+                    ok = a.canRead();
+                    break;
+                case WRITE:
+                    ok = a.canWrite();
+                    break;
+                default:
+                    ok = a.canExecute();
+                    break;
+            }
+            if (!ok)
+                throw new AccessDeniedException(path.toString());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type,
+                                                                LinkOption... options) {
+        if (type == BasicFileAttributeView.class || type == FileOwnerAttributeView.class ||
+                type == PosixFileAttributeView.class)
+            return (V) new View(toSuPath(path), follow(options));
+        return null;
+    }
+
+    @Override
+    public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type,
+                                                            LinkOption... options)
+            throws IOException {
+        if (type != BasicFileAttributes.class && type != PosixFileAttributes.class)
+            throw new UnsupportedOperationException(type.getName());
+        boolean follow = follow(options);
+        return type.cast(new Attributes(attributes(path, follow, false), follow));
+    }
+
+    @Override
+    public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options)
+            throws IOException {
+        String view = "basic";
+        int colon = attributes.indexOf(':');
+        if (colon >= 0) {
+            view = attributes.substring(0, colon);
+            attributes = attributes.substring(colon + 1);
+        }
+        List<String> supported;
+        switch (view) {
+            case "basic":
+                supported = BASIC_ATTRS;
+                break;
+            case "owner":
+                supported = OWNER_ATTRS;
+                break;
+            case "posix":
+                supported = new ArrayList<>(BASIC_ATTRS);
+                supported.addAll(POSIX_ATTRS);
+                break;
+            default:
+                throw new UnsupportedOperationException("View " + view);
+        }
+        List<String> names = attributes.equals("*") ? supported :
+                Arrays.asList(attributes.split(","));
+        for (String name : names) {
+            if (!supported.contains(name))
+                throw new IllegalArgumentException("Unknown attribute " + name);
+        }
+        boolean follow = follow(options);
+        Attributes a = new Attributes(attributes(path, follow, false), follow);
+        Map<String, Object> map = new HashMap<>();
+        for (String name : names)
+            map.put(name, a.get(name));
+        return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void setAttribute(Path path, String attribute, Object value, LinkOption... options)
+            throws IOException {
+        int colon = attribute.indexOf(':');
+        String name = colon < 0 ? attribute : attribute.substring(colon + 1);
+        View view = new View(toSuPath(path), follow(options));
+        switch (name) {
+            case "lastModifiedTime":
+                view.setTimes((FileTime) value, null, null);
+                break;
+            case "permissions":
+                view.setPermissions((Set<PosixFilePermission>) value);
+                break;
+            case "owner":
+                view.setOwner((UserPrincipal) value);
+                break;
+            case "group":
+                view.setGroup((GroupPrincipal) value);
+                break;
+            default:
+                throw new UnsupportedOperationException("Attribute " + attribute);
+        }
+    }
+
+    private static class DirStream implements DirectoryStream<Path> {
+
+        private final SuFile[] files;
+        private final Filter<? super Path> filter;
+        private boolean used = false;
+        private boolean closed = false;
+
+        DirStream(SuFile[] files, Filter<? super Path> filter) {
+            this.files = files;
+            this.filter = filter;
+        }
+
+        @NonNull
+        @Override
+        public synchronized Iterator<Path> iterator() {
+            if (used || closed)
+                throw new IllegalStateException();
+            used = true;
+            return new Iterator<Path>() {
+                private int i = 0;
+                private Path next;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null && i < files.length && !closed) {
+                        Path p = new SuPath(INSTANCE.fs, files[i++]);
+                        try {
+                            if (filter == null || filter.accept(p))
+                                next = p;
+                        } catch (IOException e) {
+                            throw new DirectoryIteratorException(e);
+                        }
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public Path next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    Path p = next;
+                    next = null;
+                    return p;
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static class WriteChannel implements SeekableByteChannel {
+
+        private final OutputStream out;
+        private long position = 0;
+        private boolean open = true;
+
+        WriteChannel(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public synchronized int write(ByteBuffer src) throws IOException {
+            if (!open)
+                throw new ClosedChannelException();
+            int n = src.remaining();
+            if (src.hasArray()) {
+                out.write(src.array(), src.arrayOffset() + src.position(), n);
+                src.position(src.limit());
+            } else {
+                byte[] b = new byte[n];
+                src.get(b);
+                out.write(b);
+            }
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            throw new NonReadableChannelException();
+        }
+
+        @Override
+        public synchronized long position() {
+            return position;
+        }
+
+        /**
+         * @throws UnsupportedOperationException the position is not the current position.
+         */
+        @Override
+        public synchronized SeekableByteChannel position(long newPosition) {
+            if (newPosition != position)
+                throw new UnsupportedOperationException("Random access writes");
+            return this;
+        }
+
+        /**
+         * @return the number of bytes written.
+         */
+        @Override
+        public synchronized long size() {
+            return position;
+        }
+
+        /**
+         * @throws UnsupportedOperationException always.
+         */
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public synchronized boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (!open)
+                return;
+            open = false;
+            out.close();
+        }
+    }
+
+    private static class Principal implements GroupPrincipal {
+
+        private final String name;
+
+        Principal(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Principal && name.equals(((Principal) obj).name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static class Attributes implements PosixFileAttributes {
+
+        private final SuFileAttributes a;
+        private final boolean link;
+
+        Attributes(SuFileAttributes a, boolean follow) {
+            this.a = a;
+            // The attributes describe the link itself
+            this.link = !follow && a.isSymlink();
+        }
+
+        Object get(String name) {
+            switch (name) {
+                case "lastModifiedTime":
+                    return lastModifiedTime();
+                case "lastAccessTime":
+                    return lastAccessTime();
+                case "creationTime":
+                    return creationTime();
+                case "size":
+                    return size();
+                case "isRegularFile":
+                    return isRegularFile();
+                case "isDirectory":
+                    return isDirectory();
+                case "isSymbolicLink":
+                    return isSymbolicLink();
+                case "isOther":
+                    return isOther();
+                case "fileKey":
+                    return fileKey();
+                case "permissions":
+                    return permissions();
+                case "owner":
+                    return owner();
+                default:
+                    return group();
+            }
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return FileTime.fromMillis(a.lastModified());
+        }
+
+        /**
+         * @return the last modified time, the access time is not fetched.
+         */
+        @Override
+        public FileTime lastAccessTime() {
+            return lastModifiedTime();
+        }
+
+        /**
+         * @return the last modified time, the creation time is not available.
+         */
+        @Override
+        public FileTime creationTime() {
+            return lastModifiedTime();
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return !link && a.isFile();
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return !link && a.isDirectory();
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return link;
+        }
+
+        @Override
+        public boolean isOther() {
+            return !link && !a.isFile() && !a.isDirectory();
+        }
+
+        @Override
+        public long size() {
+            String target = a.getLinkTarget();
+            return link ? (target == null ? 0 : target.length()) : a.length();
+        }
+
+        @Override
+        public Object fileKey() {
+            return null;
+        }
+
+        @Override
+        public UserPrincipal owner() {
+            return new Principal(link ? a.getOwner() : a.getTargetOwner());
+        }
+
+        @Override
+        public GroupPrincipal group() {
+            return new Principal(link ? a.getGroup() : a.getTargetGroup());
+        }
+
+        @Override
+        public Set<PosixFilePermission> permissions() {
+            int mode = link ? a.getMode() : a.getTargetMode();
+            Set<PosixFilePermission> set = EnumSet.noneOf(PosixFilePermission.class);
+            // Declared from OWNER_READ (0400) to OTHERS_EXECUTE (0001)
+            PosixFilePermission[] perms = PosixFilePermission.values();
+            for (int i = 0; i < perms.length; ++i) {
+                if ((mode & (0400 >> i)) != 0)
+                    set.add(perms[i]);
+            }
+            return set;
+        }
+    }
+
+    private static class View implements PosixFileAttributeView {
+
+        private final SuPath path;
+        private final boolean follow;
+
+        View(SuPath path, boolean follow) {
+            this.path = path;
+            this.follow = follow;
+        }
+
+        @Override
+        public String name() {
+            return "posix";
+        }
+
+        @Override
+        public PosixFileAttributes readAttributes() throws IOException {
+            return new Attributes(attributes(path, follow, false), follow);
+        }
+
+        /**
+         * Only the last modified time can be set. When the file is only accessible with the
+         * shell, the time is set with {@code touch -t}, which has a precision of a minute.
+         */
+        @Override
+        public void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime,
+                             FileTime createTime) throws IOException {
+            if (lastModifiedTime == null)
+                return;
+            SuFile f = path.getFile();
+            if (!f.setLastModified(lastModifiedTime.toMillis()))
+                throw new FileSystemException(path.toString());
+        }
+
+        @Override
+        public void setPermissions(Set<PosixFilePermission> perms) throws IOException {
+            int mode = 0;
+            PosixFilePermission[] all = PosixFilePermission.values();
+            for (int i = 0; i < all.length; ++i) {
+                if (perms.contains(all[i]))
+                    mode |= 0400 >> i;
+            }
+            exec(path.getFile(), path, "chmod " + Integer.toOctalString(mode) + " \"$__F_\"");
+        }
+
+        @Override
+        public UserPrincipal getOwner() throws IOException {
+            return readAttributes().owner();
+        }
+
+        @Override
+        public void setOwner(UserPrincipal owner) throws IOException {
+            exec(path.getFile(), path, "chown " + (follow ? "" : "-h ") + "-- " +
+                    ShellUtils.escapedString(owner.getName()) + " \"$__F_\"");
+        }
+
+        @Override
+        public void setGroup(GroupPrincipal group) throws IOException {
+            exec(path.getFile(), path, "chgrp " + (follow ? "" : "-h ") + "-- " +
+                    ShellUtils.escapedString(group.getName()) + " \"$__F_\"");
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package java.io;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.superuser.Shell;
+import com.superuser.internal.MainShell;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Watches a directory for changes of its direct children, returned by
+ * {@link SuFile#watch(Executor, Callback)}.
+ * <p>
+ * The watch runs in a dedicated shell, so it never occupies the shells used by the
+ * static APIs. If {@code inotifyd} (toybox or busybox) is available, events are pushed by
+ * the kernel with inotify. Otherwise the shell takes a snapshot of the names, sizes and
+ * last modified times of the children every {@value #POLL_INTERVAL} seconds, and only
+ * prints it when it changed; the application compares snapshots only when there is
+ * a change.
+ * <p>
+ * Watching stops when the directory is deleted. Always close the watcher when done,
+ * which also closes its shell.
+ */
+public final class SuFileWatcher implements Closeable {
+
+    public static final int EVENT_CREATE = 1;
+    public static final int EVENT_MODIFY = 2;
+    public static final int EVENT_DELETE = 3;
+
+    static final int POLL_INTERVAL = 2;
+
+    /*
+     * Prints "inotify" followed by the events of inotifyd, or "poll" followed by snapshots of
+     * "MTIME SIZE NAME" lines of all children, each terminated by a line of "/".
+     * inotifyd cannot parse paths with ':'.
+     */
+    private static final String WATCH_CMD = "case \"$__F_\" in *:*);;*)" +
+            "if command -v inotifyd >/dev/null;then echo inotify;" +
+            "exec inotifyd - \"$__F_\":ndmyw 2>/dev/null;fi;;esac;" +
+            "echo poll;__P_=;while [ -d \"$__F_\" ];do " +
+            "__S_=$(cd \"$__F_\"&&stat -c '%Y %s %n' * .* 2>/dev/null);" +
+            "[ \"$__S_\" != \"$__P_\" ]&&{ echo \"$__S_\";echo /;__P_=$__S_; };" +
+            "sleep " + POLL_INTERVAL + ";done";
+
+    private final SuFile dir;
+    private final Executor executor;
+    private final Callback callback;
+    private final Shell shell;
+    private final Shell.LineStream lines;
+    private boolean closed = false;
+
+    SuFileWatcher(SuFile dir, Executor executor, Callback callback) {
+        this.dir = dir;
+        this.executor = executor;
+        this.callback = callback;
+        shell = MainShell.newShell();
+        lines = dir.newJob(shell, WATCH_CMD).stream();
+        Shell.EXECUTOR.execute(this::run);
+    }
+
+    private void run() {
+        try {
+            if (!lines.hasNext())
+                return;
+            if (lines.next().equals("inotify"))
+                readEvents();
+            else
+                readSnapshots();
+        } finally {
+            close();
+        }
+    }
+
+    private void readEvents() {
+        while (lines.hasNext()) {
+            // EVENTS\tDIR\tNAME
+            String[] ev = lines.next().split("\t", 3);
+            if (ev.length != 3 || ev[0].isEmpty())
+                continue;
+            switch (ev[0].charAt(0)) {
+                case 'n':
+                case 'y': // Moved into the directory
+                    post(EVENT_CREATE, ev[2]);
+                    break;
+                case 'w':
+                    post(EVENT_MODIFY, ev[2]);
+                    break;
+                case 'd':
+                case 'm': // Moved out of the directory
+                    post(EVENT_DELETE, ev[2]);
+                    break;
+            }
+        }
+    }
+
+    private void readSnapshots() {
+        Map<String, String> prev = null;
+        Map<String, String> cur = new HashMap<>();
+        while (lines.hasNext()) {
+            String line = lines.next();
+            if (!line.equals("/")) {
+                // MTIME SIZE NAME
+                String[] fields = line.split(" ", 3);
+                if (fields.length == 3 && !fields[2].equals(".") && !fields[2].equals(".."))
+                    cur.put(fields[2], fields[0] + " " + fields[1]);
+                continue;
+            }
+            if (prev != null) {
+                for (Map.Entry<String, String> e : cur.entrySet()) {
+                    String old = prev.remove(e.getKey());
+                    if (old == null)
+                        post(EVENT_CREATE, e.getKey());
+                    else if (!old.equals(e.getValue()))
+                        post(EVENT_MODIFY, e.getKey());
+                }
+                for (String name : prev.keySet())
+                    post(EVENT_DELETE, name);
+            }
+            prev = cur;
+            cur = new HashMap<>();
+        }
+    }
+
+    private void post(int event, String name) {
+        SuFile file = dir.child(name);
+        if (executor == null)
+            callback.onEvent(event, file);
+        else
+            executor.execute(() -> callback.onEvent(event, file));
+    }
+
+    /**
+     * Stop watching and close the shell.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+        }
+        lines.close();
+        // Wait for the killed command to finish before closing the shell
+        lines.getCode();
+        try {
+            shell.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * The callback to receive the changes of a directory.
+     */
+    public interface Callback {
+        /**
+         * @param event one of {@link #EVENT_CREATE}, {@link #EVENT_MODIFY} or
+         *              {@link #EVENT_DELETE}.
+         * @param file  the child of the directory that changed.
+         */
+        void onEvent(int event, @NonNull SuFile file);
+    }
+}
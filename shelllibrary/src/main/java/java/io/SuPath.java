@@ -0,0 +1,262 @@
+package java.io;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystem;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link Path} of {@link SuFileSystemProvider}.
+ * <p>
+ * Path manipulation is delegated to a path of the default file system, which only works
+ * on strings. Each path holds a single {@link SuFile}, so the attributes fetched for the
+ * entries of a directory stay cached in the paths returned by the directory stream.
+ */
+@RequiresApi(Build.VERSION_CODES.O)
+final class SuPath implements Path {
+
+    private final SuFileSystem fs;
+    private final Path path;
+    private SuFile file;
+
+    SuPath(SuFileSystem fs, Path path) {
+        this.fs = fs;
+        this.path = path;
+    }
+
+    SuPath(SuFileSystem fs, SuFile file) {
+        this(fs, Paths.get(file.getPath()));
+        this.file = file;
+    }
+
+    private SuPath wrap(Path p) {
+        return p == null ? null : new SuPath(fs, p);
+    }
+
+    private static Path unwrap(Path p) {
+        if (!(p instanceof SuPath))
+            throw new ProviderMismatchException();
+        return ((SuPath) p).path;
+    }
+
+    /**
+     * @return the file of the absolute path, created on the first call.
+     */
+    synchronized SuFile getFile() {
+        if (file == null)
+            file = new SuFile(toAbsolutePath().toString());
+        return file;
+    }
+
+    @NonNull
+    @Override
+    public FileSystem getFileSystem() {
+        return fs;
+    }
+
+    @Override
+    public boolean isAbsolute() {
+        return path.isAbsolute();
+    }
+
+    @Override
+    public Path getRoot() {
+        return wrap(path.getRoot());
+    }
+
+    @Override
+    public Path getFileName() {
+        return wrap(path.getFileName());
+    }
+
+    @Override
+    public Path getParent() {
+        return wrap(path.getParent());
+    }
+
+    @Override
+    public int getNameCount() {
+        return path.getNameCount();
+    }
+
+    @NonNull
+    @Override
+    public Path getName(int index) {
+        return wrap(path.getName(index));
+    }
+
+    @NonNull
+    @Override
+    public Path subpath(int beginIndex, int endIndex) {
+        return wrap(path.subpath(beginIndex, endIndex));
+    }
+
+    @Override
+    public boolean startsWith(@NonNull Path other) {
+        return other instanceof SuPath && path.startsWith(unwrap(other));
+    }
+
+    @Override
+    public boolean startsWith(@NonNull String other) {
+        return path.startsWith(other);
+    }
+
+    @Override
+    public boolean endsWith(@NonNull Path other) {
+        return other instanceof SuPath && path.endsWith(unwrap(other));
+    }
+
+    @Override
+    public boolean endsWith(@NonNull String other) {
+        return path.endsWith(other);
+    }
+
+    @NonNull
+    @Override
+    public Path normalize() {
+        return wrap(path.normalize());
+    }
+
+    @NonNull
+    @Override
+    public Path resolve(@NonNull Path other) {
+        return wrap(path.resolve(unwrap(other)));
+    }
+
+    @NonNull
+    @Override
+    public Path resolve(@NonNull String other) {
+        return wrap(path.resolve(other));
+    }
+
+    @NonNull
+    @Override
+    public Path resolveSibling(@NonNull Path other) {
+        return wrap(path.resolveSibling(unwrap(other)));
+    }
+
+    @NonNull
+    @Override
+    public Path resolveSibling(@NonNull String other) {
+        return wrap(path.resolveSibling(other));
+    }
+
+    @NonNull
+    @Override
+    public Path relativize(@NonNull Path other) {
+        return wrap(path.relativize(unwrap(other)));
+    }
+
+    @NonNull
+    @Override
+    public URI toUri() {
+        try {
+            return new URI(SuFileSystemProvider.SCHEME, null, toAbsolutePath().toString(), null);
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Relative paths are resolved against the root directory, the working directory of
+     * the application does not apply to root paths.
+     */
+    @NonNull
+    @Override
+    public Path toAbsolutePath() {
+        return path.isAbsolute() ? this : wrap(path.getFileSystem().getPath("/").resolve(path));
+    }
+
+    @NonNull
+    @Override
+    public Path toRealPath(@NonNull LinkOption... options) throws IOException {
+        SuFile f = getFile();
+        if (!f.getAttributes().exists())
+            throw new NoSuchFileException(toString());
+        for (LinkOption o : options) {
+            if (o == LinkOption.NOFOLLOW_LINKS)
+                return wrap(Paths.get(f.getAbsolutePath()).normalize());
+        }
+        return wrap(Paths.get(f.getCanonicalPath()));
+    }
+
+    @NonNull
+    @Override
+    public File toFile() {
+        return getFile();
+    }
+
+    /**
+     * @throws UnsupportedOperationException always, use {@link SuFile#watch(SuFileWatcher.Callback)}.
+     */
+    @NonNull
+    @Override
+    public WatchKey register(@NonNull WatchService watcher, @NonNull WatchEvent.Kind<?>[] events,
+                             WatchEvent.Modifier... modifiers) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @throws UnsupportedOperationException always, use {@link SuFile#watch(SuFileWatcher.Callback)}.
+     */
+    @NonNull
+    @Override
+    public WatchKey register(@NonNull WatchService watcher, @NonNull WatchEvent.Kind<?>... events) {
+        throw new UnsupportedOperationException();
+    }
+
+    @NonNull
+    @Override
+    public Iterator<Path> iterator() {
+        return new Iterator<Path>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < getNameCount();
+            }
+
+            @Override
+            public Path next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return getName(i++);
+            }
+        };
+    }
+
+    @Override
+    public int compareTo(@NonNull Path other) {
+        return path.compareTo(unwrap(other));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof SuPath && path.equals(((SuPath) obj).path);
+    }
+
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}